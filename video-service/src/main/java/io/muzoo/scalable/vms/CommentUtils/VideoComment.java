@@ -8,7 +8,9 @@ import java.time.ZoneId;
 
 @Entity
 @Data
-@Table(name = "video_comment")
+@Table(name = "video_comment", indexes = {
+        @Index(name = "idx_comment_video_created", columnList = "video_id, created_at, id")
+})
 public class VideoComment {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -1,16 +1,34 @@
 package io.muzoo.scalable.vms.CommentUtils;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface VideoCommentRepository extends JpaRepository<VideoComment, Long> {
 
-    // For retrieving comments on a video in chronological order
-    List<VideoComment> findByVideoIdOrderByCreatedAtAsc(Long videoId);
+    // Keyset pages over idx_comment_video_created (video_id, created_at, id); each page reads at most :limit rows
+    @Query(value = "SELECT * FROM video_comment WHERE video_id = :videoId " +
+            "ORDER BY created_at ASC, id ASC LIMIT :limit", nativeQuery = true)
+    List<VideoComment> findOldestByVideoId(Long videoId, int limit);
+
+    @Query(value = "SELECT * FROM video_comment WHERE video_id = :videoId " +
+            "AND (created_at > :createdAt OR (created_at = :createdAt AND id > :id)) " +
+            "ORDER BY created_at ASC, id ASC LIMIT :limit", nativeQuery = true)
+    List<VideoComment> findByVideoIdAfter(Long videoId, LocalDateTime createdAt, Long id, int limit);
+
+    @Query(value = "SELECT * FROM video_comment WHERE video_id = :videoId " +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<VideoComment> findNewestByVideoId(Long videoId, int limit);
+
+    @Query(value = "SELECT * FROM video_comment WHERE video_id = :videoId " +
+            "AND (created_at < :createdAt OR (created_at = :createdAt AND id < :id)) " +
+            "ORDER BY created_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<VideoComment> findByVideoIdBefore(Long videoId, LocalDateTime createdAt, Long id, int limit);
 
     // Get the latest comment on a video
     Optional<VideoComment> findTopByVideoIdOrderByCreatedAtDesc(Long videoId);
@@ -1,7 +1,7 @@
 package io.muzoo.scalable.vms.Listener;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.muzoo.scalable.vms.events.EventCodec;
+import io.muzoo.scalable.vms.events.VideoProcessedEvent;
 import io.muzoo.scalable.vms.r2.VideoService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -10,33 +10,31 @@ import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
-
+// Handles video:processed events. Used directly as the pub/sub listener when
+// vms.video-processed.transport=pubsub; VideoProcessedStreamConsumer calls handle() for stream entries.
 @Service
 @RequiredArgsConstructor
 public class RedisMessageListener implements MessageListener {
     private static final Logger logger = LoggerFactory.getLogger(RedisMessageListener.class);
     private final VideoService videoService;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final EventCodec eventCodec;
 
     @Override
     public void onMessage(Message message, byte[] pattern) {
         try {
-            // Deserialize the message body (JSON) into a Map
-            Map<String, String> data = objectMapper.readValue(message.getBody(), new TypeReference<>() {});
-            Long videoId = Long.parseLong(data.get("video_id"));
-            String hlsPlaylistUrl = data.get("hls_playlist_url");
-            String thumbnailUrl = data.get("thumbnail_url");
-            String convertedUrl = data.get("converted_url");
-            Double duration = data.get("duration") != null ? Double.parseDouble(data.get("duration")) : null;
-
-            logger.info("Received video:processed message: video_id={}, hlsPlaylistUrl={}, thumbnailUrl={}, convertedUrl={} duration={}",
-                    videoId, hlsPlaylistUrl, thumbnailUrl, convertedUrl, duration);
-
-            // Update video metadata
-            videoService.updateVideoMetadata(videoId, hlsPlaylistUrl, thumbnailUrl, convertedUrl, duration);
+            handle(eventCodec.decode(message.getBody(), VideoProcessedEvent.class));
         } catch (Exception e) {
             logger.error("Error processing video:processed message: {}", e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    // Throws on failure so stream consumers can leave the entry pending for a retry
+    public void handle(VideoProcessedEvent event) {
+        logger.info("Received video:processed message: video_id={}, hlsPlaylistUrl={}, thumbnailUrl={}, convertedUrl={} duration={}",
+                event.videoId(), event.hlsPlaylistUrl(), event.thumbnailUrl(), event.convertedUrl(), event.duration());
+
+        // Update video metadata
+        videoService.updateVideoMetadata(event.videoId(), event.hlsPlaylistUrl(), event.thumbnailUrl(),
+                event.convertedUrl(), event.duration());
+    }
+}
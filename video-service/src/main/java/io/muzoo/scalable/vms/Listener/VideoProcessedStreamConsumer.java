@@ -0,0 +1,175 @@
+package io.muzoo.scalable.vms.Listener;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.muzoo.scalable.vms.events.VideoProcessedEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamMessageListenerContainerOptions;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Consumes video:processed from a Redis Stream through a consumer group: each entry goes to one
+// consumer across all replicas, is acknowledged only after updateVideoMetadata succeeds, and entries
+// left pending by a crashed or failing consumer are claimed again after min-idle. Entries that keep
+// failing are moved to a dead-letter stream. Delivery is at-least-once; the handler is idempotent.
+@Component
+@ConditionalOnProperty(name = "vms.video-processed.transport", havingValue = "stream", matchIfMissing = true)
+public class VideoProcessedStreamConsumer {
+    private static final Logger logger = LoggerFactory.getLogger(VideoProcessedStreamConsumer.class);
+    public static final String STREAM_KEY = "stream:video:processed";
+    private static final String DEAD_LETTER_KEY = "stream:video:processed:dead";
+    private static final String GROUP = "video-service";
+
+    private final RedisConnectionFactory connectionFactory;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListener handler;
+    private final MeterRegistry meterRegistry;
+    private final int consumers;
+    private final Duration minIdle;
+    private final int maxDeliveries;
+    private final String consumerName;
+    private StreamMessageListenerContainer<String, MapRecord<String, String, String>> container;
+
+    public VideoProcessedStreamConsumer(RedisConnectionFactory connectionFactory,
+                                        StringRedisTemplate stringRedisTemplate,
+                                        RedisMessageListener handler,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${vms.video-processed.consumers:2}") int consumers,
+                                        @Value("${vms.video-processed.reclaim-min-idle:60s}") Duration minIdle,
+                                        @Value("${vms.video-processed.max-deliveries:5}") int maxDeliveries) {
+        this.connectionFactory = connectionFactory;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.handler = handler;
+        this.meterRegistry = meterRegistry;
+        this.consumers = consumers;
+        this.minIdle = minIdle;
+        this.maxDeliveries = maxDeliveries;
+        this.consumerName = hostName();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        createGroupIfMissing();
+        StreamMessageListenerContainerOptions<String, MapRecord<String, String, String>> options =
+                StreamMessageListenerContainerOptions.builder()
+                        .pollTimeout(Duration.ofSeconds(2))
+                        .batchSize(10)
+                        .executor(new SimpleAsyncTaskExecutor("video-processed-"))
+                        .errorHandler(e -> logger.error("Error reading {}: {}", STREAM_KEY, e.getMessage()))
+                        .build();
+        container = StreamMessageListenerContainer.create(connectionFactory, options);
+        // Several consumers per pod; the group spreads entries over every consumer of every replica
+        for (int i = 0; i < consumers; i++) {
+            container.receive(Consumer.from(GROUP, consumerName + "-" + i),
+                    StreamOffset.create(STREAM_KEY, ReadOffset.lastConsumed()),
+                    record -> process(record.getId(), record.getValue()));
+        }
+        container.start();
+        logger.info("Consuming {} as {} with {} consumers", STREAM_KEY, consumerName, consumers);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    // Claims entries another consumer received but never acknowledged (crash, failure) and retries them
+    @Scheduled(fixedDelayString = "${vms.video-processed.reclaim-interval-ms:30000}")
+    public void reclaimPending() {
+        if (container == null) {
+            return;
+        }
+        try {
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(STREAM_KEY, GROUP, Range.unbounded(), 100);
+            for (PendingMessage message : pending) {
+                if (message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) < 0) {
+                    continue;
+                }
+                List<MapRecord<String, Object, Object>> claimed = stringRedisTemplate.opsForStream().claim(STREAM_KEY, GROUP,
+                        consumerName + "-reclaim", XClaimOptions.minIdle(minIdle).ids(message.getId()));
+                for (MapRecord<String, Object, Object> record : claimed) {
+                    Map<String, String> data = new HashMap<>();
+                    record.getValue().forEach((k, v) -> data.put(k.toString(), v.toString()));
+                    if (message.getTotalDeliveryCount() >= maxDeliveries) {
+                        deadLetter(record.getId(), data, message.getTotalDeliveryCount());
+                    } else {
+                        process(record.getId(), data);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to reclaim pending {} entries: {}", STREAM_KEY, e.getMessage());
+        }
+    }
+
+    private void process(RecordId id, Map<String, String> data) {
+        try {
+            handler.handle(VideoProcessedEvent.fromFields(data));
+            meterRegistry.counter("vms.video_processed.events", "outcome", "processed").increment();
+        } catch (IllegalArgumentException e) {
+            // Unknown video or malformed entry: retrying cannot help
+            logger.error("Dropping video:processed entry {}: {}", id, e.getMessage());
+            meterRegistry.counter("vms.video_processed.events", "outcome", "rejected").increment();
+        } catch (Exception e) {
+            // Left pending; reclaimPending retries it after min-idle
+            logger.error("Failed to process video:processed entry {}, will retry: {}", id, e.getMessage(), e);
+            meterRegistry.counter("vms.video_processed.events", "outcome", "failed").increment();
+            return;
+        }
+        stringRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, id);
+    }
+
+    private void deadLetter(RecordId id, Map<String, String> data, long deliveries) {
+        Map<String, String> entry = new HashMap<>(data);
+        entry.put("original_id", id.getValue());
+        entry.put("deliveries", String.valueOf(deliveries));
+        stringRedisTemplate.opsForStream().add(StreamRecords.string(entry).withStreamKey(DEAD_LETTER_KEY));
+        stringRedisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, id);
+        meterRegistry.counter("vms.video_processed.events", "outcome", "dead_lettered").increment();
+        logger.error("Moved video:processed entry {} to {} after {} deliveries", id, DEAD_LETTER_KEY, deliveries);
+    }
+
+    private void createGroupIfMissing() {
+        try {
+            // From the start of the stream, so events written before the first deploy are processed too
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.streamCommands()
+                    .xGroupCreate(STREAM_KEY.getBytes(StandardCharsets.UTF_8), GROUP, ReadOffset.from("0"), true));
+        } catch (RedisSystemException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "video-service-" + UUID.randomUUID();
+        }
+    }
+}
@@ -9,7 +9,10 @@ import java.time.ZoneId;
 @Entity
 @Data
 @NoArgsConstructor
-@Table(name = "vms_video_data")
+@Table(name = "vms_video_data", indexes = {
+        @Index(name = "idx_video_feed", columnList = "visibility, status, upload_time, id"),
+        @Index(name = "idx_video_user_uploads", columnList = "user_id, upload_time, id")
+})
 public class Video {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
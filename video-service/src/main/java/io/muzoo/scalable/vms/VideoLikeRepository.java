@@ -1,12 +1,21 @@
 package io.muzoo.scalable.vms;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface VideoLikeRepository extends JpaRepository<VideoLike, Long> {
     Optional<VideoLike> findByVideoIdAndUserId(Long videoId, String userId);
 
+    @Query("SELECT l.userId FROM VideoLike l WHERE l.videoId = :videoId")
+    List<String> findUserIdsByVideoId(@Param("videoId") Long videoId);
+
+    @Query("SELECT l.videoId FROM VideoLike l WHERE l.userId = :userId")
+    List<Long> findVideoIdsByUserId(@Param("userId") String userId);
+
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,12 +14,23 @@ import java.util.Optional;
 public interface VideoRepository extends JpaRepository<Video, Long> {
     Optional<Video> findByObjectKey(String objectKey);
 
-    @Query(value = "SELECT * FROM vms_video_data WHERE visibility = :visibility AND status = 'UPLOADED' ORDER BY upload_time DESC LIMIT :limit OFFSET :offset", nativeQuery = true)
+    @Query(value = "SELECT * FROM vms_video_data WHERE visibility = :visibility AND status = 'UPLOADED' ORDER BY upload_time DESC, id DESC LIMIT :limit OFFSET :offset", nativeQuery = true)
     List<Video> findByVisibilityAndStatus(String visibility, int limit, int offset);
 
-    @Query(value = "SELECT * FROM vms_video_data WHERE user_id = :userId AND status IN ('PROCESSING', 'UPLOADED', 'READY') ORDER BY upload_time DESC LIMIT :limit OFFSET :offset", nativeQuery = true)
+    @Query(value = "SELECT * FROM vms_video_data WHERE user_id = :userId AND status IN ('PROCESSING', 'UPLOADED', 'READY') ORDER BY upload_time DESC, id DESC LIMIT :limit OFFSET :offset", nativeQuery = true)
     List<Video> findByUserIdAndStatus(String userId, int limit, int offset);
 
+    // Keyset variants: seek past the (upload_time, id) of the last row instead of skipping OFFSET rows
+    @Query(value = "SELECT * FROM vms_video_data WHERE visibility = :visibility AND status = 'UPLOADED' " +
+            "AND (upload_time < :uploadTime OR (upload_time = :uploadTime AND id < :id)) " +
+            "ORDER BY upload_time DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Video> findByVisibilityAndStatusBefore(String visibility, LocalDateTime uploadTime, Long id, int limit);
+
+    @Query(value = "SELECT * FROM vms_video_data WHERE user_id = :userId AND status IN ('PROCESSING', 'UPLOADED', 'READY') " +
+            "AND (upload_time < :uploadTime OR (upload_time = :uploadTime AND id < :id)) " +
+            "ORDER BY upload_time DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Video> findByUserIdAndStatusBefore(String userId, LocalDateTime uploadTime, Long id, int limit);
+
     @Query(value = "SELECT * FROM vms_video_data WHERE id = :id", nativeQuery = true)
     Optional<Video> findByIdNative(Long id);
 
@@ -0,0 +1,7 @@
+package io.muzoo.scalable.vms.comments;
+
+import io.muzoo.scalable.vms.CommentUtils.CommentResponseDTO;
+
+// Published inside addComment's transaction; CommentSideEffects picks it up once the comment is committed
+public record CommentAddedEvent(CommentResponseDTO comment, String videoTitle) {
+}
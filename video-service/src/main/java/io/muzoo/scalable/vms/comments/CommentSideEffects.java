@@ -0,0 +1,127 @@
+package io.muzoo.scalable.vms.comments;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.muzoo.scalable.vms.CommentUtils.CommentResponseDTO;
+import io.muzoo.scalable.vms.notifications.ActivityStreams;
+import io.muzoo.scalable.vms.notifications.NotificationCoalescer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Everything addComment does besides the INSERT and its outbox row: recent-comments cache, VIP
+// registration and the VIP notification fan-out. Runs after commit on a bounded pool so comment
+// latency no longer depends on audience size; each step is retried on its own. When the queue is
+// full the posting thread runs the work itself, which slows posters down instead of dropping it.
+@Component
+public class CommentSideEffects {
+    private static final Logger logger = LoggerFactory.getLogger(CommentSideEffects.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RecentCommentsCache recentCommentsCache;
+    private final NotificationCoalescer notificationCoalescer;
+    private final ActivityStreams activityStreams;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor executor;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+
+    public CommentSideEffects(StringRedisTemplate stringRedisTemplate,
+                              RecentCommentsCache recentCommentsCache,
+                              NotificationCoalescer notificationCoalescer,
+                              ActivityStreams activityStreams,
+                              MeterRegistry meterRegistry,
+                              @Value("${vms.comments.effects.threads:4}") int threads,
+                              @Value("${vms.comments.effects.queue-capacity:10000}") int queueCapacity,
+                              @Value("${vms.comments.effects.max-attempts:3}") int maxAttempts,
+                              @Value("${vms.comments.effects.retry-backoff:200ms}") Duration retryBackoff) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.recentCommentsCache = recentCommentsCache;
+        this.notificationCoalescer = notificationCoalescer;
+        this.activityStreams = activityStreams;
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        ArrayBlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+                new CustomizableThreadFactory("comment-effects-"),
+                (task, pool) -> {
+                    meterRegistry.counter("vms.comments.effects.rejected").increment();
+                    if (!pool.isShutdown()) {
+                        task.run();
+                    }
+                });
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "comment-effects");
+        meterRegistry.gaugeCollectionSize("vms.comments.effects.queued", List.of(), queue);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCommentAdded(CommentAddedEvent event) {
+        executor.execute(() -> apply(event));
+    }
+
+    private void apply(CommentAddedEvent event) {
+        CommentResponseDTO comment = event.comment();
+        Long videoId = comment.getVideoId();
+        String userId = comment.getUserId();
+
+        runStep("recent-cache", comment, () -> recentCommentsCache.push(comment));
+
+        // Add user to VIP set
+        runStep("vip", comment, () -> {
+            Long added = stringRedisTemplate.opsForSet().add("video:" + videoId + ":vips", userId);
+            if (added != null && added == 1L) {
+                logger.debug("User {} added to VIP set for video {}", userId, videoId);
+            }
+            activityStreams.follow(videoId, userId);
+        });
+
+        // Trigger notification for VIPs, coalesced with other comments on the video
+        runStep("notify", comment, () -> notificationCoalescer.recordComment(videoId, event.videoTitle(), userId));
+    }
+
+    private void runStep(String step, CommentResponseDTO comment, Runnable action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                action.run();
+                meterRegistry.counter("vms.comments.effects.steps", "step", step, "outcome", "success").increment();
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    meterRegistry.counter("vms.comments.effects.steps", "step", step, "outcome", "failed").increment();
+                    logger.error("Giving up on {} for comment {} after {} attempts: {}",
+                            step, comment.getId(), attempt, e.getMessage(), e);
+                    return;
+                }
+                meterRegistry.counter("vms.comments.effects.steps", "step", step, "outcome", "retried").increment();
+                try {
+                    Thread.sleep(retryBackoff.toMillis() * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("{} comment side effects still queued at shutdown", executor.getQueue().size());
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package io.muzoo.scalable.vms.comments;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.muzoo.scalable.vms.CommentUtils.CommentResponseDTO;
+import io.muzoo.scalable.vms.redis.RedisScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+// The newest comments of each video as a capped Redis ZSET of pre-serialized DTOs. Members share one
+// score and are prefixed with a fixed-width (created_at, id) key, so lexicographic order is DB order
+// no matter which thread pushes first. Pushes always add (creating the key if needed) and the warm-up
+// merges its DB snapshot in and adds a marker; readers only trust a set that has the marker. The TTL
+// is set once at creation and never refreshed, so a cached set is never older than ttl.
+@Component
+public class RecentCommentsCache {
+    private static final Logger logger = LoggerFactory.getLogger(RecentCommentsCache.class);
+    private static final DefaultRedisScript<Long> PUSH_SCRIPT = RedisScripts.load("push_recent_comment.lua", Long.class);
+    private static final DefaultRedisScript<Long> WARM_SCRIPT = RedisScripts.load("warm_recent_comments.lua", Long.class);
+    // Sorts above every "<digits>:" member, so it is always rank 0 of a reverse range
+    private static final String COMPLETE_MARKER = "~complete";
+    private static final int SORT_KEY_LENGTH = 40;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader commentReader;
+    private final int capacity;
+    private final Duration ttl;
+
+    public RecentCommentsCache(StringRedisTemplate stringRedisTemplate,
+                               ObjectMapper objectMapper,
+                               @Value("${vms.comments.recent.size:100}") int capacity,
+                               @Value("${vms.comments.recent.ttl:1h}") Duration ttl) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.commentReader = objectMapper.readerFor(CommentResponseDTO.class);
+        this.capacity = capacity;
+        this.ttl = ttl;
+    }
+
+    // v2: was a list; the old keys expire on their own
+    public static String key(Long videoId) {
+        return "video:" + videoId + ":comments:recent:v2";
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void push(CommentResponseDTO comment) {
+        try {
+            stringRedisTemplate.execute(PUSH_SCRIPT, List.of(key(comment.getVideoId())),
+                    member(comment), String.valueOf(capacity), String.valueOf(ttl.toSeconds()));
+        } catch (Exception e) {
+            // Drop the set rather than leave it without this comment
+            logger.warn("Failed to cache comment {} for video {}: {}", comment.getId(), comment.getVideoId(), e.getMessage());
+            evict(comment.getVideoId());
+        }
+    }
+
+    // The newest `limit` comments, or null when the set is not cached (or Redis is unavailable)
+    public List<CommentResponseDTO> newest(Long videoId, int limit) {
+        try {
+            Set<String> cached = stringRedisTemplate.opsForZSet().reverseRange(key(videoId), 0, limit);
+            if (cached == null || cached.isEmpty()) {
+                return null;
+            }
+            Iterator<String> members = cached.iterator();
+            if (!COMPLETE_MARKER.equals(members.next())) {
+                // Only pushes so far; the warm-up has not merged the older comments in yet
+                return null;
+            }
+            List<CommentResponseDTO> comments = new ArrayList<>(cached.size() - 1);
+            while (members.hasNext()) {
+                comments.add(commentReader.readValue(members.next().substring(SORT_KEY_LENGTH + 1)));
+            }
+            return comments;
+        } catch (Exception e) {
+            logger.warn("Failed to read recent comments for video {}: {}", videoId, e.getMessage());
+            return null;
+        }
+    }
+
+    // comments must be the newest `capacity` rows from the DB
+    public void warm(Long videoId, List<CommentResponseDTO> comments) {
+        try {
+            List<String> args = new ArrayList<>(comments.size() + 3);
+            args.add(String.valueOf(ttl.toSeconds()));
+            args.add(String.valueOf(capacity));
+            args.add(COMPLETE_MARKER);
+            for (CommentResponseDTO comment : comments) {
+                args.add(member(comment));
+            }
+            stringRedisTemplate.execute(WARM_SCRIPT, List.of(key(videoId)), args.toArray());
+        } catch (JsonProcessingException e) {
+            logger.warn("Failed to serialize comments for video {}: {}", videoId, e.getMessage());
+        } catch (Exception e) {
+            logger.warn("Failed to warm recent comments for video {}: {}", videoId, e.getMessage());
+        }
+    }
+
+    public void evict(Long videoId) {
+        try {
+            stringRedisTemplate.delete(key(videoId));
+        } catch (Exception e) {
+            logger.warn("Failed to evict recent comments for video {}: {}", videoId, e.getMessage());
+        }
+    }
+
+    // "<created_at micros><id>:<json>", both numbers zero-padded to 20 digits
+    private String member(CommentResponseDTO comment) throws JsonProcessingException {
+        LocalDateTime createdAt = LocalDateTime.parse(comment.getCreatedAt());
+        long micros = createdAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + createdAt.getNano() / 1_000;
+        return String.format("%020d%020d:", micros, comment.getId()) + objectMapper.writeValueAsString(comment);
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Collections;
 import java.util.List;
@@ -39,9 +40,18 @@ public class VideoCommentController {
     }
 
     @GetMapping("/{videoId}/comments")
-    public ResponseEntity<List<CommentResponseDTO>> getComments(@PathVariable Long videoId) {
+    public ResponseEntity<VideoCommentService.CommentPage> getComments(
+            @PathVariable Long videoId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            // Newest first by default: that first page is the one RecentCommentsCache serves
+            @RequestParam(defaultValue = "desc") String order) {
         System.out.println("Received request to get comments for videoId: " + videoId);
-        return ResponseEntity.ok(commentService.getCommentsForVideo(videoId));
+        try {
+            return ResponseEntity.ok(commentService.getCommentsForVideo(videoId, cursor, limit, order));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
     }
 
 
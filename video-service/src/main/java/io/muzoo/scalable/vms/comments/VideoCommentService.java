@@ -1,22 +1,18 @@
 package io.muzoo.scalable.vms.comments;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.muzoo.scalable.vms.CommentUtils.*;
 import io.muzoo.scalable.vms.Video;
+import io.muzoo.scalable.vms.events.CommentEvent;
 import io.muzoo.scalable.vms.VideoRepository;
-import io.muzoo.scalable.vms.notifications.NotificationService;
-import io.muzoo.scalable.vms.redis.RedisPublisher;
+import io.muzoo.scalable.vms.outbox.OutboxService;
+import io.muzoo.scalable.vms.util.KeysetCursor;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,62 +20,95 @@ import java.util.stream.Collectors;
 public class VideoCommentService {
     private final VideoCommentRepository commentRepository;
     private final VideoRepository videoRepository;
-    private final RedisPublisher redisPublisher;
     private final HtmlSanitizer htmlSanitizer;
-    private final StringRedisTemplate stringRedisTemplate;
-    private final NotificationService notificationService;
+    private final RecentCommentsCache recentCommentsCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final OutboxService outboxService;
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    public record CommentPage(List<CommentResponseDTO> comments, String nextCursor) {
+    }
 
     @Transactional
     public CommentResponseDTO addComment(Long videoId, String userId, AddCommentRequestDTO request) {
-        videoRepository.findById(videoId)
+        Video video = videoRepository.findById(videoId)
                 .orElseThrow(() -> new IllegalArgumentException("Video not found with ID: " + videoId));
         String sanitizedContent = htmlSanitizer.sanitize(request.getContent());
         VideoComment comment = new VideoComment(videoId, userId, sanitizedContent);
         VideoComment saved = commentRepository.save(comment);
 
-        Map<String, String> message = Map.of(
-                "id", saved.getId().toString(),
-                "video_id", videoId.toString(),
-                "user_id", userId,
-                "content", sanitizedContent,
-                "created_at", saved.getCreatedAt().toString()
-        );
-        redisPublisher.publish("comment:new", message);
+        // comment:new commits with the row; VIP registration and notifications run in CommentSideEffects
+        outboxService.enqueue("comment:new:" + videoId, "video", videoId, new CommentEvent(
+                saved.getId(), videoId, userId, sanitizedContent, saved.getCreatedAt().toString()));
+        CommentResponseDTO response = toResponse(saved);
+        eventPublisher.publishEvent(new CommentAddedEvent(response, video.getTitle()));
+        return response;
+    }
 
-        // Add user to VIP set
-        String vipKey = "video:" + videoId + ":vips";
-        Long added = stringRedisTemplate.opsForSet().add(vipKey, userId);
+    // One page of comments in (created_at, id) order; "asc" is chronological, "desc" newest first
+    public CommentPage getCommentsForVideo(Long videoId, String cursor, int limit, String order) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be a positive integer");
+        }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        boolean newestFirst = "desc".equalsIgnoreCase(order);
+        if (!newestFirst && !"asc".equalsIgnoreCase(order)) {
+            throw new IllegalArgumentException("Order must be 'asc' or 'desc'");
+        }
+        System.out.println("Fetching comments for videoId: " + videoId + " (limit " + pageSize + ", " + order + ")");
 
-        if (added != null && added == 1L) {
-            System.out.println("User " + userId + " added to VIP set for video " + videoId);
+        // Top of the thread, newest first: served from the recent-comments set when it covers the page.
+        // Only this first page is cached; older pages (cursor) and "asc" always read the DB.
+        if (cursor == null && newestFirst && pageSize <= recentCommentsCache.getCapacity()) {
+            List<CommentResponseDTO> recent = recentCommentsCache.newest(videoId, pageSize);
+            if (recent == null) {
+                recent = commentRepository.findNewestByVideoId(videoId, recentCommentsCache.getCapacity())
+                        .stream()
+                        .map(this::toResponse)
+                        .collect(Collectors.toList());
+                recentCommentsCache.warm(videoId, recent);
+                recent = recent.subList(0, Math.min(pageSize, recent.size()));
+            }
+            String nextCursor = null;
+            if (recent.size() == pageSize) {
+                CommentResponseDTO last = recent.get(recent.size() - 1);
+                nextCursor = new KeysetCursor(LocalDateTime.parse(last.getCreatedAt()), last.getId()).encode();
+            }
+            return new CommentPage(recent, nextCursor);
+        }
+
+        List<VideoComment> page;
+        if (cursor == null) {
+            page = newestFirst
+                    ? commentRepository.findNewestByVideoId(videoId, pageSize)
+                    : commentRepository.findOldestByVideoId(videoId, pageSize);
         } else {
-            System.out.println("User " + userId + " was already a VIP for video " + videoId);
+            KeysetCursor position = KeysetCursor.decode(cursor);
+            page = newestFirst
+                    ? commentRepository.findByVideoIdBefore(videoId, position.time(), position.id(), pageSize)
+                    : commentRepository.findByVideoIdAfter(videoId, position.time(), position.id(), pageSize);
         }
 
-        // Trigger notification for VIPs
-        notificationService.notifyVipUsersComment(videoId, userId);
+        List<CommentResponseDTO> comments = page.stream()
+                .map(this::toResponse)
+                .collect(Collectors.toList());
+        String nextCursor = null;
+        if (page.size() == pageSize) {
+            VideoComment last = page.get(page.size() - 1);
+            nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new CommentPage(comments, nextCursor);
+    }
 
+    private CommentResponseDTO toResponse(VideoComment comment) {
         return new CommentResponseDTO(
-                saved.getId(),
-                saved.getVideoId(),
-                saved.getUserId(),
-                sanitizedContent,
-                saved.getCreatedAt().toString()
+                comment.getId(),
+                comment.getVideoId(),
+                comment.getUserId(),
+                comment.getContent(),
+                comment.getCreatedAt().toString()
         );
     }
 
-    public List<CommentResponseDTO> getCommentsForVideo(Long videoId) {
-        System.out.println("Fetching comments for videoId: " + videoId);
-        return commentRepository.findByVideoIdOrderByCreatedAtAsc(videoId)
-                .stream()
-                .map(comment -> new CommentResponseDTO(
-                        comment.getId(),
-                        comment.getVideoId(),
-                        comment.getUserId(),
-                        comment.getContent(),
-                        comment.getCreatedAt().toString()
-                ))
-                .collect(Collectors.toList());
-    }
-
 }
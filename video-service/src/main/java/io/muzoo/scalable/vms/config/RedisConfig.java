@@ -1,11 +1,16 @@
 package io.muzoo.scalable.vms.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.muzoo.scalable.vms.Listener.*;
+import io.muzoo.scalable.vms.redis.BoundedMessageListener;
+import io.muzoo.scalable.vms.redis.BoundedMessageListener.OverflowPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
@@ -15,6 +20,8 @@ import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.data.redis.listener.PatternTopic;
 
+import java.time.Duration;
+
 @Configuration
 public class RedisConfig {
     private static final Logger logger = LoggerFactory.getLogger(RedisConfig.class);
@@ -40,10 +47,19 @@ public class RedisConfig {
 
     @Bean
     public RedisMessageListenerContainer redisContainer(RedisConnectionFactory connectionFactory,
-                                                        MessageListenerAdapter videoListenerAdapter) {
+                                                        BoundedMessageListener videoProcessedListener,
+                                                        @Value("${vms.video-processed.transport:stream}") String videoProcessedTransport,
+                                                        @Value("${vms.listeners.dispatch.queue-capacity:10000}") int dispatchQueueCapacity,
+                                                        MeterRegistry meterRegistry) {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
-        container.addMessageListener(videoListenerAdapter, new PatternTopic("video:processed"));
+        // Listeners queue onto their own bounded executors; this thread only hands messages over
+        container.setTaskExecutor(BoundedMessageListener.dispatchExecutor(dispatchQueueCapacity,
+                meterRegistry.counter("vms.redis.dispatch.dropped")));
+        // With the stream transport video:processed is read by VideoProcessedStreamConsumer instead
+        if ("pubsub".equals(videoProcessedTransport)) {
+            container.addMessageListener(videoProcessedListener, new PatternTopic("video:processed"));
+        }
         container.setErrorHandler(e -> logger.error("Error in Redis listener container: {}", e.getMessage(), e));
         return container;
     }
@@ -53,8 +69,17 @@ public class RedisConfig {
         return new ObjectMapper();
     }
 
+    // Reads vms.listeners.video-processed.{concurrency,queue-capacity,overflow,block-timeout}
     @Bean
-    public MessageListenerAdapter videoListenerAdapter(RedisMessageListener videoListener) {
-        return new MessageListenerAdapter(videoListener, "onMessage");
+    public BoundedMessageListener videoProcessedListener(RedisMessageListener videoListener, Environment environment,
+                                                         MeterRegistry meterRegistry) {
+        String prefix = "vms.listeners.video-processed.";
+        BoundedMessageListener.Settings settings = new BoundedMessageListener.Settings(
+                environment.getProperty(prefix + "concurrency", Integer.class, 2),
+                environment.getProperty(prefix + "queue-capacity", Integer.class, 1000),
+                environment.getProperty(prefix + "overflow", OverflowPolicy.class, OverflowPolicy.BLOCK),
+                environment.getProperty(prefix + "block-timeout", Duration.class, Duration.ofSeconds(5)));
+        return new BoundedMessageListener("video:processed", new MessageListenerAdapter(videoListener, "onMessage"),
+                settings, meterRegistry);
     }
 }
@@ -0,0 +1,13 @@
+package io.muzoo.scalable.vms.events;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// comment:new, written to the outbox as JSON text and relayed as is
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record CommentEvent(long id,
+                           @JsonProperty("video_id") long videoId,
+                           @JsonProperty("user_id") String userId,
+                           String content,
+                           @JsonProperty("created_at") String createdAt) {
+}
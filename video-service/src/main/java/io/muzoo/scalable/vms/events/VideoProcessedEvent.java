@@ -0,0 +1,26 @@
+package io.muzoo.scalable.vms.events;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+// video:processed from the Python worker, as JSON (pub/sub) or as stream entry fields
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record VideoProcessedEvent(@JsonProperty("video_id") long videoId,
+                                  @JsonProperty("hls_playlist_url") String hlsPlaylistUrl,
+                                  @JsonProperty("thumbnail_url") String thumbnailUrl,
+                                  @JsonProperty("converted_url") String convertedUrl,
+                                  Double duration) {
+
+    public static VideoProcessedEvent fromFields(Map<String, String> fields) {
+        String videoId = fields.get("video_id");
+        if (videoId == null) {
+            throw new IllegalArgumentException("video:processed entry without video_id");
+        }
+        String duration = fields.get("duration");
+        return new VideoProcessedEvent(Long.parseLong(videoId), fields.get("hls_playlist_url"),
+                fields.get("thumbnail_url"), fields.get("converted_url"),
+                duration != null ? Double.parseDouble(duration) : null);
+    }
+}
@@ -0,0 +1,9 @@
+package io.muzoo.scalable.vms.events;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// view:count, published at most once per broadcast tick per video
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ViewCountEvent(@JsonProperty("video_id") long videoId, @JsonProperty("view_count") long viewCount) {
+}
@@ -0,0 +1,277 @@
+package io.muzoo.scalable.vms.notifications;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.muzoo.scalable.vms.redis.RedisScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+
+// Fan-out-on-read half of the notification model. Videos whose VIP set is too large for per-user
+// delivery append each notification once to video:{id}:activity; every user keeps a ZSET of the
+// videos they follow (score = when they joined). When a user reads notifications, new entries from
+// the activity streams they follow are copied into their own inbox, so write cost stays O(1) and the
+// copying is paid only by users who actually open their notifications.
+//
+// A hash of video id -> latest stream id lets a pull skip every followed video with nothing new
+// (two HMGETs instead of an XRANGE per video), and pulls are throttled per user because the badge
+// endpoint polls. Streams expire after the retention period without activity and a periodic prune
+// drops their videos from the hash.
+@Component
+public class ActivityStreams {
+    private static final Logger logger = LoggerFactory.getLogger(ActivityStreams.class);
+    public static final String LATEST_ACTIVITY_KEY = "notifications:activity-videos:latest";
+    // Set of active video ids used before LATEST_ACTIVITY_KEY; converted once at startup
+    private static final String LEGACY_ACTIVE_VIDEOS_KEY = "notifications:activity-videos";
+    private static final String FOLLOWING_BACKFILLED_KEY = "notifications:vip-videos:backfilled";
+    public static final int FOLLOWING_LIMIT = 1000;
+    private static final int PRUNE_BATCH_SIZE = 500;
+    private static final DefaultRedisScript<Long> ADD_SCRIPT = RedisScripts.load("add_activity.lua", Long.class);
+    private static final DefaultRedisScript<Long> APPEND_SCRIPT = RedisScripts.load("append_activity.lua", Long.class);
+    private static final DefaultRedisScript<Long> PRUNE_SCRIPT = RedisScripts.load("prune_activity_videos.lua", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final int streamLength;
+    private final int inboxSize;
+    private final Duration retention;
+    private final Duration pullInterval;
+
+    public ActivityStreams(StringRedisTemplate stringRedisTemplate,
+                           ObjectMapper objectMapper,
+                           @Value("${vms.notifications.activity.stream-length:100}") int streamLength,
+                           @Value("${vms.notifications.inbox-size:50}") int inboxSize,
+                           @Value("${vms.notifications.activity.retention:7d}") Duration retention,
+                           @Value("${vms.notifications.activity.pull-interval:5s}") Duration pullInterval) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.streamLength = streamLength;
+        this.inboxSize = inboxSize;
+        this.retention = retention;
+        this.pullInterval = pullInterval;
+    }
+
+    public static String streamKey(Long videoId) {
+        return "video:" + videoId + ":activity";
+    }
+
+    public static String followingKey(String userId) {
+        return "user:" + userId + ":vip-videos";
+    }
+
+    private static String seenKey(String userId) {
+        return "user:" + userId + ":activity-seen";
+    }
+
+    private static String pulledKey(String userId) {
+        return "user:" + userId + ":activity-pulled";
+    }
+
+    // Actors are stored newline-separated so readers can skip activity they took part in
+    public void append(Long videoId, Collection<String> actorUserIds, String sharedJson) {
+        stringRedisTemplate.execute(ADD_SCRIPT, List.of(streamKey(videoId), LATEST_ACTIVITY_KEY),
+                videoId.toString(), String.valueOf(streamLength), String.valueOf(retention.toSeconds()),
+                String.join("\n", actorUserIds), sharedJson);
+    }
+
+    // NX keeps the original join time, so a user never receives activity from before they joined
+    public void follow(Long videoId, String userId) {
+        String key = followingKey(userId);
+        stringRedisTemplate.opsForZSet().addIfAbsent(key, videoId.toString(), System.currentTimeMillis());
+        stringRedisTemplate.opsForZSet().removeRange(key, 0, -(FOLLOWING_LIMIT + 1));
+    }
+
+    // Copies unseen activity of followed high-traffic videos into the user's inbox, oldest first.
+    // At most once per pull interval per user; activity arriving in between waits for the next pull.
+    public void pullInto(String userId) {
+        try {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(pulledKey(userId), "1", pullInterval))) {
+                return;
+            }
+            Set<ZSetOperations.TypedTuple<String>> following = stringRedisTemplate.opsForZSet()
+                    .rangeWithScores(followingKey(userId), 0, -1);
+            if (following == null || following.isEmpty()) {
+                return;
+            }
+            List<Object> videoIds = new ArrayList<>(following.size());
+            Map<String, Long> joinedAt = new HashMap<>();
+            for (ZSetOperations.TypedTuple<String> entry : following) {
+                videoIds.add(entry.getValue());
+                joinedAt.put(entry.getValue(), entry.getScore() == null ? 0L : entry.getScore().longValue());
+            }
+            List<Object> latest = stringRedisTemplate.opsForHash().multiGet(LATEST_ACTIVITY_KEY, videoIds);
+            List<Object> seen = stringRedisTemplate.opsForHash().multiGet(seenKey(userId), videoIds);
+
+            String quotedUserId = objectMapper.writeValueAsString(userId);
+            List<String> cas = new ArrayList<>();
+            List<Map.Entry<RecordId, String>> pulled = new ArrayList<>();
+            for (int i = 0; i < videoIds.size(); i++) {
+                String videoId = (String) videoIds.get(i);
+                String latestId = (String) latest.get(i);
+                String lastSeen = (String) seen.get(i);
+                if (latestId == null || !hasNewActivity(RecordId.of(latestId), lastSeen, joinedAt.get(videoId))) {
+                    continue;
+                }
+                // Inclusive start; the entry equal to lastSeen was already pulled and is skipped below
+                String start = lastSeen != null ? lastSeen : joinedAt.get(videoId) + "-0";
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                        .range(streamKey(Long.valueOf(videoId)), Range.rightUnbounded(Range.Bound.inclusive(start)),
+                                Limit.limit().count(inboxSize + 1));
+                if (records == null || records.isEmpty()
+                        || (records.size() == 1 && records.get(0).getId().getValue().equals(lastSeen))) {
+                    continue;
+                }
+                for (MapRecord<String, Object, Object> record : records) {
+                    Object actors = record.getValue().get("actors");
+                    if (record.getId().getValue().equals(lastSeen)
+                            || (actors != null && Arrays.asList(((String) actors).split("\n")).contains(userId))) {
+                        continue;
+                    }
+                    String shared = (String) record.getValue().get("payload");
+                    pulled.add(Map.entry(record.getId(), "{\"userId\":" + quotedUserId + "," + shared.substring(1)));
+                }
+                cas.add(videoId);
+                cas.add(lastSeen == null ? "" : lastSeen);
+                cas.add(records.get(records.size() - 1).getId().getValue());
+            }
+            if (cas.isEmpty()) {
+                return;
+            }
+            pulled.sort(Comparator.comparing((Map.Entry<RecordId, String> e) -> e.getKey().getTimestamp())
+                    .thenComparing(e -> e.getKey().getSequence()));
+
+            List<String> args = new ArrayList<>();
+            args.add(String.valueOf(inboxSize));
+            args.add(String.valueOf(cas.size() / 3));
+            args.addAll(cas);
+            pulled.forEach(e -> args.add(e.getValue()));
+            stringRedisTemplate.execute(APPEND_SCRIPT, List.of(NotificationInbox.SEQUENCE_KEY, NotificationInbox.idsKey(userId),
+                    NotificationInbox.dataKey(userId), NotificationInbox.unreadKey(userId), seenKey(userId)), args.toArray());
+        } catch (JsonProcessingException e) {
+            logger.warn("Failed to encode user id {}: {}", userId, e.getMessage());
+        } catch (Exception e) {
+            // The inbox is still readable; the activity will be pulled on the next read
+            logger.warn("Failed to pull activity streams for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private static boolean hasNewActivity(RecordId latest, String lastSeen, long joinedAtMillis) {
+        if (lastSeen == null) {
+            return latest.getTimestamp() >= joinedAtMillis;
+        }
+        RecordId seen = RecordId.of(lastSeen);
+        return latest.getTimestamp() > seen.getTimestamp()
+                || (latest.getTimestamp().equals(seen.getTimestamp()) && latest.getSequence() > seen.getSequence());
+    }
+
+    @Scheduled(fixedDelayString = "${vms.notifications.activity.prune-interval-ms:3600000}")
+    public void pruneInactiveVideos() {
+        long pruned = 0;
+        List<String> batch = new ArrayList<>(PRUNE_BATCH_SIZE);
+        ScanOptions options = ScanOptions.scanOptions().count(PRUNE_BATCH_SIZE).build();
+        try (Cursor<Map.Entry<Object, Object>> cursor = stringRedisTemplate.opsForHash().scan(LATEST_ACTIVITY_KEY, options)) {
+            while (cursor.hasNext()) {
+                batch.add((String) cursor.next().getKey());
+                if (batch.size() == PRUNE_BATCH_SIZE) {
+                    pruned += prune(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                pruned += prune(batch);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to prune inactive activity streams: {}", e.getMessage());
+        }
+        if (pruned > 0) {
+            logger.info("Pruned {} videos without recent activity", pruned);
+        }
+    }
+
+    private long prune(List<String> videoIds) {
+        Long pruned = stringRedisTemplate.execute(PRUNE_SCRIPT, List.of(LATEST_ACTIVITY_KEY), videoIds.toArray());
+        return pruned != null ? pruned : 0L;
+    }
+
+    // One-off conversion of the legacy active-video set: record each stream's newest id and give the
+    // stream the retention TTL it was written without
+    @EventListener(ApplicationReadyEvent.class)
+    public void importLegacyActiveVideos() {
+        try {
+            Set<String> legacy = stringRedisTemplate.opsForSet().members(LEGACY_ACTIVE_VIDEOS_KEY);
+            if (legacy == null || legacy.isEmpty()) {
+                return;
+            }
+            for (String videoId : legacy) {
+                String key = streamKey(Long.valueOf(videoId));
+                List<MapRecord<String, Object, Object>> newest = stringRedisTemplate.opsForStream()
+                        .reverseRange(key, Range.unbounded(), Limit.limit().count(1));
+                if (newest != null && !newest.isEmpty()) {
+                    stringRedisTemplate.opsForHash().putIfAbsent(LATEST_ACTIVITY_KEY, videoId, newest.get(0).getId().getValue());
+                    stringRedisTemplate.expire(key, retention);
+                }
+            }
+            stringRedisTemplate.delete(LEGACY_ACTIVE_VIDEOS_KEY);
+            logger.info("Imported {} legacy activity videos", legacy.size());
+        } catch (Exception e) {
+            logger.warn("Failed to import legacy activity videos: {}", e.getMessage());
+        }
+    }
+
+    // One-off SCAN that registers existing VIPs (video:{id}:vips, written before followed videos were
+    // tracked) as followers. They join now, so like any new follower they only see activity from here
+    // on. NX keeps real join times; a run interrupted before the marker is set is simply repeated.
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillFollowing() {
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(FOLLOWING_BACKFILLED_KEY))) {
+            return;
+        }
+        long joinedAt = System.currentTimeMillis();
+        long videos = 0;
+        ScanOptions options = ScanOptions.scanOptions().match("video:*:vips").type(DataType.SET).count(1000).build();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String vipKey = cursor.next();
+                String videoId = vipKey.split(":")[1];
+                List<String> members = new ArrayList<>();
+                try (Cursor<String> vips = stringRedisTemplate.opsForSet().scan(vipKey, ScanOptions.scanOptions().count(1000).build())) {
+                    vips.forEachRemaining(members::add);
+                }
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection redis = (StringRedisConnection) connection;
+                    for (String userId : members) {
+                        redis.zAdd(followingKey(userId), joinedAt, videoId,
+                                RedisZSetCommands.ZAddArgs.ifNotExists());
+                        redis.zRemRange(followingKey(userId), 0, -(FOLLOWING_LIMIT + 1));
+                    }
+                    return null;
+                });
+                videos++;
+            }
+            stringRedisTemplate.opsForValue().set(FOLLOWING_BACKFILLED_KEY, "1");
+            logger.info("Backfilled followed videos from {} VIP sets", videos);
+        } catch (Exception e) {
+            logger.warn("Failed to backfill followed videos: {}", e.getMessage());
+        }
+    }
+}
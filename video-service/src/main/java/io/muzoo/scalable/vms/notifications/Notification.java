@@ -0,0 +1,27 @@
+package io.muzoo.scalable.vms.notifications;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+// Stored notification payload. Fields added by newer writers are optional so older inbox entries
+// (and ones imported from the list format) still read; read comes from the unread set, not the payload.
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record Notification(
+        long id,
+        String userId,
+        Long videoId,
+        String type,
+        String message,
+        Integer actorCount,
+        List<String> lastActors,
+        Long commentCount,
+        String timestamp,
+        boolean read) {
+
+    public Notification withRead(boolean read) {
+        return new Notification(id, userId, videoId, type, message, actorCount, lastActors, commentCount, timestamp, read);
+    }
+}
@@ -0,0 +1,164 @@
+package io.muzoo.scalable.vms.notifications;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.muzoo.scalable.vms.redis.RedisScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Groups comment notifications per video over a time window, so a busy thread produces one
+// "X, Y and N others commented" notification per recipient per window instead of one per comment.
+// Windows live in Redis (a due ZSET plus per-window state), so every replica feeds the same window
+// and exactly one replica emits it. A claimed window's state is kept under a lease until delivery
+// succeeds; a window whose delivery failed (or whose claimer died) is taken over again once the lease
+// runs out, up to MAX_ATTEMPTS times. Delivery is therefore at-least-once.
+@Service
+public class NotificationCoalescer {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationCoalescer.class);
+    private static final String DUE_KEY = "notifications:windows:due";
+    private static final String COMMENT_TYPE = "comment";
+    private static final int CLAIM_BATCH_SIZE = 100;
+    private static final DefaultRedisScript<Long> COALESCE_SCRIPT = RedisScripts.load("coalesce_comment.lua", Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT = RedisScripts.load("claim_window.lua", List.class);
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> RECLAIM_SCRIPT = RedisScripts.load("reclaim_window.lua", List.class);
+    private static final String PROCESSING_KEY = "notifications:windows:processing";
+    private static final Duration CLAIM_LEASE = Duration.ofMinutes(2);
+    private static final int MAX_ATTEMPTS = 5;
+
+    // actors are most recent first
+    public record CommentActivity(Long videoId, String videoTitle, long commentCount, List<String> actors) {
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final NotificationService notificationService;
+    private final Duration window;
+    private final Counter recordedEvents;
+    private final Counter emittedWindows;
+
+    public NotificationCoalescer(StringRedisTemplate stringRedisTemplate,
+                                 NotificationService notificationService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${vms.notifications.coalesce.window:30s}") Duration window) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.notificationService = notificationService;
+        this.window = window;
+        this.recordedEvents = meterRegistry.counter("vms.notifications.coalesce.events");
+        this.emittedWindows = meterRegistry.counter("vms.notifications.coalesce.emitted");
+    }
+
+    private static String windowKey(String windowId) {
+        return "notifications:window:" + windowId;
+    }
+
+    private static String actorsKey(String windowId) {
+        return "notifications:window:" + windowId + ":actors";
+    }
+
+    public void recordComment(Long videoId, String videoTitle, String actorUserId) {
+        recordedEvents.increment();
+        if (window.isZero()) {
+            emittedWindows.increment();
+            notificationService.notifyVipUsersComment(new CommentActivity(videoId, videoTitle, 1, List.of(actorUserId)));
+            return;
+        }
+        String windowId = videoId + ":" + COMMENT_TYPE;
+        stringRedisTemplate.execute(COALESCE_SCRIPT, List.of(windowKey(windowId), actorsKey(windowId), DUE_KEY),
+                windowId, String.valueOf(System.currentTimeMillis()), String.valueOf(window.toMillis()),
+                actorUserId, videoTitle);
+    }
+
+    @Scheduled(fixedDelayString = "${vms.notifications.coalesce.flush-interval-ms:1000}")
+    public void emitClosedWindows() {
+        Set<String> due;
+        do {
+            due = stringRedisTemplate.opsForZSet().rangeByScore(DUE_KEY, 0, System.currentTimeMillis(), 0, CLAIM_BATCH_SIZE);
+            if (due == null || due.isEmpty()) {
+                break;
+            }
+            for (String windowId : due) {
+                try {
+                    emit(windowId);
+                } catch (Exception e) {
+                    logger.error("Failed to emit notification window {}, will retry: {}", windowId, e.getMessage(), e);
+                }
+            }
+        } while (due.size() == CLAIM_BATCH_SIZE);
+
+        Set<String> expired = stringRedisTemplate.opsForZSet()
+                .rangeByScore(PROCESSING_KEY, 0, System.currentTimeMillis(), 0, CLAIM_BATCH_SIZE);
+        if (expired != null) {
+            for (String claimId : expired) {
+                try {
+                    retry(claimId);
+                } catch (Exception e) {
+                    logger.error("Retry of notification window {} failed: {}", claimId, e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    // claim id = "<window id>@<uuid>", so a window can close again while an earlier claim is pending
+    @SuppressWarnings("unchecked")
+    private void emit(String windowId) {
+        String claimId = windowId + "@" + UUID.randomUUID();
+        List<Object> claimed = stringRedisTemplate.execute(CLAIM_SCRIPT,
+                List.of(DUE_KEY, windowKey(windowId), actorsKey(windowId), PROCESSING_KEY, windowKey(claimId), actorsKey(claimId)),
+                windowId, claimId, String.valueOf(System.currentTimeMillis() + CLAIM_LEASE.toMillis()));
+        if (claimed == null || claimed.isEmpty()) {
+            return; // another replica got it
+        }
+        deliver(claimId, (String) claimed.get(0), (String) claimed.get(1), (List<String>) claimed.get(2));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void retry(String claimId) {
+        long now = System.currentTimeMillis();
+        List<Object> claimed = stringRedisTemplate.execute(RECLAIM_SCRIPT,
+                List.of(PROCESSING_KEY, windowKey(claimId), actorsKey(claimId)),
+                claimId, String.valueOf(now), String.valueOf(now + CLAIM_LEASE.toMillis()));
+        if (claimed == null || claimed.isEmpty()) {
+            return; // another replica took it over, or its lease was just renewed
+        }
+        int attempts = Integer.parseInt((String) claimed.get(3));
+        if (attempts >= MAX_ATTEMPTS) {
+            logger.error("Dropping notification window {} after {} failed deliveries", claimId, attempts);
+            ack(claimId);
+            return;
+        }
+        deliver(claimId, (String) claimed.get(0), (String) claimed.get(1), (List<String>) claimed.get(2));
+    }
+
+    // The claimed state is only deleted once notifyVipUsersComment returned; if it throws, the window
+    // stays in PROCESSING_KEY and is retried after the lease
+    private void deliver(String claimId, String count, String title, List<String> actors) {
+        if (!actors.isEmpty()) {
+            Long videoId = Long.valueOf(claimId.substring(0, claimId.indexOf(':')));
+            emittedWindows.increment();
+            notificationService.notifyVipUsersComment(new CommentActivity(videoId, title, Long.parseLong(count), actors));
+        }
+        ack(claimId);
+    }
+
+    private void ack(String claimId) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            redis.del(windowKey(claimId), actorsKey(claimId));
+            redis.zRem(PROCESSING_KEY, claimId);
+            return null;
+        });
+    }
+}
@@ -1,88 +1,95 @@
 package io.muzoo.scalable.vms.notifications;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/videos")
 @RequiredArgsConstructor
 public class NotificationController {
-    private final RedisTemplate<String, String> stringRedisTemplate;
-    private final ObjectMapper objectMapper;
+    private final NotificationInbox notificationInbox;
+    private final ActivityStreams activityStreams;
 
-    // Get notifications for the user
+    // Get notifications for the user, newest first. Page with before=<nextCursor> (or offset);
+    // raw=true returns the stored JSON untouched plus an unreadIds list.
     @GetMapping("/notifications")
-    public ResponseEntity<List<Map<String, Object>>> getNotifications(
+    public ResponseEntity<?> getNotifications(
+            @RequestHeader(value = "X-User-Id", required = false) String userId,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "false") boolean raw) {
+
+        if (userId == null || userId.trim().isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "User ID required"));
+        }
+        if (limit < 1 || offset < 0) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be positive and offset non-negative"));
+        }
+        int pageSize = Math.min(limit, 50);
+
+        activityStreams.pullInto(userId);
+        if (raw) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(notificationInbox.listRaw(userId, before, offset, pageSize));
+        }
+        return ResponseEntity.ok(notificationInbox.list(userId, before, offset, pageSize));
+    }
+
+    // Badge count without loading any notification payloads
+    @GetMapping("/notifications/unread-count")
+    public ResponseEntity<Map<String, Object>> getUnreadCount(
             @RequestHeader(value = "X-User-Id", required = false) String userId) {
 
         if (userId == null || userId.trim().isEmpty()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Collections.emptyList());
+                    .body(Map.of("error", "User ID required"));
         }
 
-        String notificationKey = "notifications:user:" + userId;
-        List<String> rawList = stringRedisTemplate.opsForList().range(notificationKey, 0, -1);
-        if (rawList == null) rawList = Collections.emptyList();
-
-        List<Map<String, Object>> result = rawList.stream()
-                .map(json -> {
-                    try {
-                        return objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {});
-                    } catch (Exception e) {
-                        System.out.println("Error parsing notification: " + e.getMessage());
-                        Map<String, Object> fallback = new HashMap<>();
-                        fallback.put("message", "Error parsing notification");
-                        fallback.put("timestamp", "");
-                        fallback.put("read", false);
-                        return fallback;
-                    }
-                })
-                .collect(Collectors.toList());
-
-        return ResponseEntity.ok(result);
+        activityStreams.pullInto(userId);
+        return ResponseEntity.ok(Map.of("unread", notificationInbox.unreadCount(userId)));
     }
 
-    // Mark a specific notification as read (by index)
-    @PostMapping("/notifications/{index}/read")
+    // Mark a specific notification as read (by id)
+    @PostMapping("/notifications/{id}/read")
     public ResponseEntity<?> markAsRead(
             @RequestHeader("X-User-Id") String userId,
-            @PathVariable int index) {
+            @PathVariable long id) {
 
         if (userId == null || userId.trim().isEmpty()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "User ID required"));
         }
 
-        String notificationKey = "notifications:user:" + userId;
-        String rawNotification = stringRedisTemplate.opsForList().index(notificationKey, index);
-        if (rawNotification == null) {
+        if (!notificationInbox.markRead(userId, id)) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(Map.of("error", "Notification not found at index " + index));
+                    .body(Map.of("error", "Notification not found: " + id));
         }
+        return ResponseEntity.ok(Map.of("message", "Marked as read", "id", id,
+                "unread", notificationInbox.unreadCount(userId)));
+    }
 
-        try {
-            Map<String, Object> notification = objectMapper.readValue(rawNotification, new TypeReference<>() {});
-            notification.put("read", true);
-            String updatedJson = objectMapper.writeValueAsString(notification);
-            stringRedisTemplate.opsForList().set(notificationKey, index, updatedJson);
-            return ResponseEntity.ok(Map.of("message", "Marked as read", "index", index));
-        } catch (Exception e) {
-            System.out.println("Error updating notification at index " + index + ": " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Error updating notification"));
+    // Mark every notification up to and including upTo as read; all of them when upTo is omitted
+    @PostMapping("/notifications/read-all")
+    public ResponseEntity<?> markAllAsRead(
+            @RequestHeader("X-User-Id") String userId,
+            @RequestParam(required = false) Long upTo) {
+
+        if (userId == null || userId.trim().isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "User ID required"));
         }
+
+        long marked = notificationInbox.markAllRead(userId, upTo);
+        return ResponseEntity.ok(Map.of("message", "Marked as read", "marked", marked,
+                "unread", notificationInbox.unreadCount(userId)));
     }
 
 }
-
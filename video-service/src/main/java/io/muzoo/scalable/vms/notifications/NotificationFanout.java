@@ -0,0 +1,120 @@
+package io.muzoo.scalable.vms.notifications;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.muzoo.scalable.vms.redis.RedisScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Sends one notification to every member of a user set. The set is walked with SSCAN and each chunk
+// of recipients is delivered by a single script call, so 10k recipients cost ~10k/chunk-size round
+// trips instead of three per recipient. The payload is serialized once; only userId varies.
+@Component
+public class NotificationFanout {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationFanout.class);
+    private static final DefaultRedisScript<Long> FANOUT_SCRIPT = RedisScripts.load("fanout_notifications.lua", Long.class);
+    private static final DefaultRedisScript<Long> PERSONAL_SCRIPT = RedisScripts.load("deliver_personal_notifications.lua", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final int chunkSize;
+    private final int inboxSize;
+    private final Timer fanoutTimer;
+    private final Counter deliveredCounter;
+
+    public NotificationFanout(StringRedisTemplate stringRedisTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${vms.notifications.fanout.chunk-size:500}") int chunkSize,
+                              @Value("${vms.notifications.inbox-size:50}") int inboxSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.chunkSize = chunkSize;
+        this.inboxSize = inboxSize;
+        this.fanoutTimer = Timer.builder("vms.notifications.fanout.latency")
+                .description("Time to deliver one notification to all recipients")
+                .register(meterRegistry);
+        this.deliveredCounter = meterRegistry.counter("vms.notifications.fanout.recipients");
+    }
+
+    // sharedJson is a JSON object with every field except userId, e.g. {"videoId":1,"message":"..."}
+    public long fanOut(String recipientSetKey, Set<String> excludedUserIds, String sharedJson) {
+        String sharedFields = sharedJson.substring(1);
+        return fanoutTimer.record(() -> {
+            long delivered = 0;
+            Set<String> seen = new HashSet<>(); // SSCAN may return a member more than once
+            List<String> chunk = new ArrayList<>(chunkSize);
+            ScanOptions options = ScanOptions.scanOptions().count(chunkSize).build();
+            try (Cursor<String> cursor = stringRedisTemplate.opsForSet().scan(recipientSetKey, options)) {
+                while (cursor.hasNext()) {
+                    String userId = cursor.next();
+                    if (excludedUserIds.contains(userId) || !seen.add(userId)) {
+                        continue;
+                    }
+                    chunk.add(userId);
+                    if (chunk.size() == chunkSize) {
+                        delivered += deliver(chunk, sharedFields);
+                        chunk.clear();
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                delivered += deliver(chunk, sharedFields);
+            }
+            deliveredCounter.increment(delivered);
+            logger.info("Fanned out notification from {} to {} users", recipientSetKey, delivered);
+            return delivered;
+        });
+    }
+
+    // A different notification for each of a few named users (e.g. personalised variants of a
+    // fanned-out notification), all in one script call
+    public long deliverEach(Map<String, String> jsonByUserId) {
+        if (jsonByUserId.isEmpty()) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<>(jsonByUserId.size() * 3 + 1);
+        List<String> args = new ArrayList<>(jsonByUserId.size() * 2 + 1);
+        keys.add(NotificationInbox.SEQUENCE_KEY);
+        args.add(String.valueOf(inboxSize));
+        jsonByUserId.forEach((userId, json) -> {
+            keys.add(NotificationInbox.idsKey(userId));
+            keys.add(NotificationInbox.dataKey(userId));
+            keys.add(NotificationInbox.unreadKey(userId));
+            args.add(userId);
+            args.add(json.substring(1));
+        });
+        Long delivered = stringRedisTemplate.execute(PERSONAL_SCRIPT, keys, args.toArray());
+        long count = delivered != null ? delivered : 0;
+        deliveredCounter.increment(count);
+        return count;
+    }
+
+    private long deliver(List<String> userIds, String sharedFields) {
+        List<String> keys = new ArrayList<>(userIds.size() * 3 + 1);
+        keys.add(NotificationInbox.SEQUENCE_KEY);
+        for (String userId : userIds) {
+            keys.add(NotificationInbox.idsKey(userId));
+            keys.add(NotificationInbox.dataKey(userId));
+            keys.add(NotificationInbox.unreadKey(userId));
+        }
+        Object[] args = new Object[userIds.size() + 2];
+        args[0] = sharedFields;
+        args[1] = String.valueOf(inboxSize);
+        for (int i = 0; i < userIds.size(); i++) {
+            args[i + 2] = userIds.get(i);
+        }
+        Long delivered = stringRedisTemplate.execute(FANOUT_SCRIPT, keys, args);
+        return delivered != null ? delivered : 0;
+    }
+}
@@ -0,0 +1,191 @@
+package io.muzoo.scalable.vms.notifications;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.muzoo.scalable.vms.redis.RedisScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+// Per-user notification inbox addressed by stable ids (from the notifications:seq counter):
+//   notifications:user:{id}:ids     ZSET id -> id, newest = highest id
+//   notifications:user:{id}:data    HASH id -> JSON payload
+//   notifications:user:{id}:unread  ZSET id -> id; ZCARD is the badge count
+// Writers are the fan-out and activity-pull scripts; this class reads and updates read state.
+@Component
+public class NotificationInbox {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationInbox.class);
+    public static final String SEQUENCE_KEY = "notifications:seq";
+    private static final DefaultRedisScript<Long> IMPORT_LEGACY_SCRIPT = RedisScripts.load("import_legacy_notifications.lua", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectReader notificationReader;
+    private final int inboxSize;
+
+    public NotificationInbox(StringRedisTemplate stringRedisTemplate,
+                             ObjectMapper objectMapper,
+                             @Value("${vms.notifications.inbox-size:50}") int inboxSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.notificationReader = objectMapper.readerFor(Notification.class);
+        this.inboxSize = inboxSize;
+    }
+
+    public static String idsKey(String userId) {
+        return "notifications:user:" + userId + ":ids";
+    }
+
+    public static String dataKey(String userId) {
+        return "notifications:user:" + userId + ":data";
+    }
+
+    public static String unreadKey(String userId) {
+        return "notifications:user:" + userId + ":unread";
+    }
+
+    public record NotificationPage(List<Notification> notifications, String nextCursor) {
+    }
+
+    // Newest first. before (an id) continues after a previous page; otherwise offset counts from the newest.
+    public NotificationPage list(String userId, Long before, int offset, int limit) {
+        List<String> ids = pageIds(userId, before, offset, limit);
+        if (ids.isEmpty()) {
+            return new NotificationPage(List.of(), null);
+        }
+        List<Object> fetched = fetch(userId, ids);
+        @SuppressWarnings("unchecked")
+        List<String> payloads = (List<String>) fetched.get(0);
+        @SuppressWarnings("unchecked")
+        List<Double> unread = (List<Double>) fetched.get(1);
+        return new NotificationPage(parse(ids, payloads, unread), nextCursor(ids, limit));
+    }
+
+    // Same page as list(), but the stored JSON is copied into the response as-is; read state is
+    // returned separately as unreadIds because the stored payloads are never rewritten.
+    public String listRaw(String userId, Long before, int offset, int limit) {
+        List<String> ids = pageIds(userId, before, offset, limit);
+        if (ids.isEmpty()) {
+            return renderRaw(ids, List.of(), List.of(), null);
+        }
+        List<Object> fetched = fetch(userId, ids);
+        @SuppressWarnings("unchecked")
+        List<String> payloads = (List<String>) fetched.get(0);
+        @SuppressWarnings("unchecked")
+        List<Double> unread = (List<Double>) fetched.get(1);
+        return renderRaw(ids, payloads, unread, nextCursor(ids, limit));
+    }
+
+    // The Redis-free halves of list() and listRaw(), also driven by NotificationReadBenchmark
+    List<Notification> parse(List<String> ids, List<String> payloads, List<Double> unread) {
+        List<Notification> notifications = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            String payload = payloads.get(i);
+            if (payload == null) {
+                continue;
+            }
+            try {
+                Notification notification = notificationReader.readValue(payload);
+                notifications.add(notification.withRead(unread.get(i) == null));
+            } catch (Exception e) {
+                logger.warn("Error parsing notification {}: {}", ids.get(i), e.getMessage());
+            }
+        }
+        return notifications;
+    }
+
+    static String renderRaw(List<String> ids, List<String> payloads, List<Double> unread, String nextCursor) {
+        StringBuilder json = new StringBuilder(256 + ids.size() * 256).append("{\"notifications\":[");
+        StringBuilder unreadIds = new StringBuilder("[");
+        boolean first = true;
+        for (int i = 0; i < ids.size(); i++) {
+            if (payloads.get(i) == null) {
+                continue;
+            }
+            json.append(first ? "" : ",").append(payloads.get(i));
+            first = false;
+            if (unread.get(i) != null) {
+                unreadIds.append(unreadIds.length() > 1 ? "," : "").append(ids.get(i));
+            }
+        }
+        return json.append("],\"unreadIds\":").append(unreadIds).append("]")
+                .append(",\"nextCursor\":").append(nextCursor == null ? "null" : "\"" + nextCursor + "\"")
+                .append("}").toString();
+    }
+
+    private List<String> pageIds(String userId, Long before, int offset, int limit) {
+        Set<String> ids = before != null
+                ? stringRedisTemplate.opsForZSet().reverseRangeByScore(idsKey(userId), Double.NEGATIVE_INFINITY, before - 1, 0, limit)
+                : stringRedisTemplate.opsForZSet().reverseRange(idsKey(userId), offset, offset + limit - 1);
+        return ids == null ? List.of() : new ArrayList<>(ids);
+    }
+
+    // Payloads and unread scores for the page in one round trip
+    private List<Object> fetch(String userId, List<String> ids) {
+        String[] members = ids.toArray(new String[0]);
+        return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            redis.hMGet(dataKey(userId), members);
+            redis.zMScore(unreadKey(userId), members);
+            return null;
+        });
+    }
+
+    private static String nextCursor(List<String> ids, int limit) {
+        return ids.size() < limit ? null : ids.get(ids.size() - 1);
+    }
+
+    public long unreadCount(String userId) {
+        Long count = stringRedisTemplate.opsForZSet().zCard(unreadKey(userId));
+        return count != null ? count : 0L;
+    }
+
+    // False when the id is not (or no longer) in the user's inbox
+    public boolean markRead(String userId, long id) {
+        String member = String.valueOf(id);
+        if (!stringRedisTemplate.opsForHash().hasKey(dataKey(userId), member)) {
+            return false;
+        }
+        stringRedisTemplate.opsForZSet().remove(unreadKey(userId), member);
+        return true;
+    }
+
+    // Marks every notification with id <= upToId as read (all of them when upToId is null)
+    public long markAllRead(String userId, Long upToId) {
+        double max = upToId != null ? upToId : Double.POSITIVE_INFINITY;
+        Long removed = stringRedisTemplate.opsForZSet().removeRangeByScore(unreadKey(userId), Double.NEGATIVE_INFINITY, max);
+        return removed != null ? removed : 0L;
+    }
+
+    // One-off SCAN that moves inboxes written in the old list format into the id-addressed store
+    @EventListener(ApplicationReadyEvent.class)
+    public void importLegacyInboxes() {
+        ScanOptions options = ScanOptions.scanOptions().match("notifications:user:*").type(DataType.LIST).count(1000).build();
+        long inboxes = 0;
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String legacyKey = cursor.next();
+                String userId = legacyKey.substring("notifications:user:".length());
+                stringRedisTemplate.execute(IMPORT_LEGACY_SCRIPT,
+                        List.of(legacyKey, SEQUENCE_KEY, idsKey(userId), dataKey(userId), unreadKey(userId)),
+                        String.valueOf(inboxSize));
+                inboxes++;
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to import legacy notification inboxes: {}", e.getMessage());
+        }
+        if (inboxes > 0) {
+            logger.info("Imported {} legacy notification inboxes", inboxes);
+        }
+    }
+}
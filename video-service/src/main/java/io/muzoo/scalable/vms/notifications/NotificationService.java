@@ -1,75 +1,115 @@
 package io.muzoo.scalable.vms.notifications;
 
-
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.muzoo.scalable.vms.CommentUtils.HtmlSanitizer;
-import io.muzoo.scalable.vms.CommentUtils.VideoCommentRepository;
-import io.muzoo.scalable.vms.Video;
-import io.muzoo.scalable.vms.VideoRepository;
-import io.muzoo.scalable.vms.redis.RedisPublisher;
-import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
-import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
 public class NotificationService {
-    private final VideoRepository videoRepository;
-    private final RedisPublisher redisPublisher;
+    private static final Logger logger = LoggerFactory.getLogger(NotificationService.class);
+
+    private final NotificationFanout notificationFanout;
+    private final ActivityStreams activityStreams;
     private final StringRedisTemplate stringRedisTemplate;
 
-    private final ObjectMapper objectMapper;
+    private static final int LAST_ACTORS_SHOWN = 3;
 
-    public void notifyVipUsersComment(Long videoId, String actorUserId) {
-        String vipKey = "video:" + videoId + ":vips";
-        Set<String> vipUserIds = Optional.ofNullable(stringRedisTemplate.opsForSet().members(vipKey))
-                .orElse(Collections.emptySet())
-                .stream()
-                .map(Object::toString)
-                .filter(id -> !id.equals(actorUserId))
-                .collect(Collectors.toSet());
+    // The per-recipient id and userId are prepended by the fan-out scripts
+    record SharedNotification(Long videoId, String type, String message, int actorCount,
+                                      List<String> lastActors, long commentCount, String timestamp, boolean read) {
+    }
 
-        Video video = videoRepository.findById(videoId)
-                .orElseThrow(() -> new IllegalArgumentException("Video not found with ID: " + videoId));
-        String videoTitle = video.getTitle();
+    private final ObjectWriter sharedWriter;
 
-        String message = String.format("User %s commented on video '%s'", actorUserId, videoTitle);
+    public NotificationService(NotificationFanout notificationFanout,
+                               ActivityStreams activityStreams,
+                               StringRedisTemplate stringRedisTemplate,
+                               ObjectMapper objectMapper) {
+        this.notificationFanout = notificationFanout;
+        this.activityStreams = activityStreams;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.sharedWriter = objectMapper.writerFor(SharedNotification.class);
+    }
 
-        for (String userId : vipUserIds) {
-            String notificationKey = "notifications:user:" + userId;
+    @Value("${vms.notifications.fanout.read-threshold:1000}")
+    private long fanOutOnReadThreshold;
 
-            Map<String, Object> notification = Map.of(
-                    "userId", userId,
-                    "videoId", videoId,
-                    "message", message,
-                    "timestamp", Instant.now().toString(),
-                    "read", false
-            );
+    // Delivers one (possibly coalesced) comment notification to the video's VIPs. Actors never get the
+    // shared notification; an actor who is also a VIP gets one about the other actors only.
+    public void notifyVipUsersComment(NotificationCoalescer.CommentActivity activity) {
+        Long videoId = activity.videoId();
+        String vipKey = "video:" + videoId + ":vips";
+        Set<String> actors = new LinkedHashSet<>(activity.actors());
+        String timestamp = Instant.now().toString();
 
-            try {
-                String notificationJson = objectMapper.writeValueAsString(notification);
-                stringRedisTemplate.opsForList().leftPush(notificationKey, notificationJson);
-                stringRedisTemplate.opsForList().trim(notificationKey, 0, 49);
+        // Everything but userId is shared by all recipients, so it is built and serialized once
+        String sharedJson = serialize(activity, activity.actors(), timestamp);
+        if (sharedJson == null) {
+            return;
+        }
+        // Large audiences read from the video's activity stream instead of receiving a copy each
+        Long vipCount = stringRedisTemplate.opsForSet().size(vipKey);
+        if (vipCount != null && vipCount > fanOutOnReadThreshold) {
+            activityStreams.append(videoId, actors, sharedJson);
+            logger.debug("Appended notification to activity stream of video {} ({} VIPs)", videoId, vipCount);
+            return;
+        }
+        long delivered = notificationFanout.fanOut(vipKey, actors, sharedJson);
 
-                String redisChannel = "notification:user:" + userId;
-                redisPublisher.publishString(redisChannel, notificationJson);
-                System.out.println("Published notification to channel " + redisChannel + ": " + message);
-            } catch (JsonProcessingException e) {
-                System.out.println("Error serializing notification JSON: " + e.getMessage());
-            } catch (Exception e) {
-                System.out.println("Error storing or publishing notification: " + e.getMessage());
+        if (actors.size() > 1) {
+            Map<Object, Boolean> actorIsVip = stringRedisTemplate.opsForSet().isMember(vipKey, actors.toArray());
+            Map<String, String> personal = new LinkedHashMap<>();
+            for (String actor : actors) {
+                if (actorIsVip == null || !Boolean.TRUE.equals(actorIsVip.get(actor))) {
+                    continue;
+                }
+                List<String> others = activity.actors().stream().filter(a -> !a.equals(actor)).toList();
+                String personalJson = serialize(activity, others, timestamp);
+                if (personalJson != null) {
+                    personal.put(actor, personalJson);
+                }
             }
+            delivered += notificationFanout.deliverEach(personal);
+        }
+        logger.debug("Published notification to {} VIPs of video {}", delivered, videoId);
+    }
 
+    private String serialize(NotificationCoalescer.CommentActivity activity, List<String> actors, String timestamp) {
+        SharedNotification notification = new SharedNotification(activity.videoId(), "comment",
+                String.format("%s on video '%s'", describe(activity, actors), activity.videoTitle()),
+                actors.size(), actors.subList(0, Math.min(LAST_ACTORS_SHOWN, actors.size())),
+                activity.commentCount(), timestamp, false);
+        try {
+            return sharedWriter.writeValueAsString(notification);
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to serialize notification for video {}: {}", activity.videoId(), e.getMessage());
+            return null;
+        }
+    }
+
+    // "User a commented", "User a left 3 comments", "a and b commented", "a, b and 4 others commented"
+    private static String describe(NotificationCoalescer.CommentActivity activity, List<String> actors) {
+        if (actors.size() == 1) {
+            return activity.commentCount() > 1
+                    ? String.format("User %s left %d comments", actors.get(0), activity.commentCount())
+                    : String.format("User %s commented", actors.get(0));
+        }
+        if (actors.size() == 2) {
+            return String.format("%s and %s commented", actors.get(0), actors.get(1));
         }
+        int others = actors.size() - 2;
+        return String.format("%s, %s and %d other%s commented", actors.get(0), actors.get(1), others, others == 1 ? "" : "s");
     }
 }
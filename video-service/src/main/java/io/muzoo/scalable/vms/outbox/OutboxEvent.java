@@ -0,0 +1,44 @@
+package io.muzoo.scalable.vms.outbox;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// A Redis message written in the same transaction as the change it announces; OutboxRelay publishes
+// rows in id order and deletes them once Redis has accepted them.
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "event_outbox")
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "channel", nullable = false, length = 100)
+    private String channel;
+
+    // What the event is about, e.g. "video" / 42
+    @Column(name = "aggregate_type", nullable = false, length = 50)
+    private String aggregateType;
+
+    @Column(name = "aggregate_id", nullable = false)
+    private String aggregateId;
+
+    // JSON, published as-is
+    @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public OutboxEvent(String channel, String aggregateType, String aggregateId, String payload) {
+        this.channel = channel;
+        this.aggregateType = aggregateType;
+        this.aggregateId = aggregateId;
+        this.payload = payload;
+        this.createdAt = Instant.now();
+    }
+}
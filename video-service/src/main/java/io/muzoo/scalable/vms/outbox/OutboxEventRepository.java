@@ -0,0 +1,15 @@
+package io.muzoo.scalable.vms.outbox;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // Oldest pending events first; id order is commit order per aggregate
+    @Query(value = "SELECT * FROM event_outbox ORDER BY id ASC LIMIT :limit", nativeQuery = true)
+    List<OutboxEvent> findOldest(int limit);
+}
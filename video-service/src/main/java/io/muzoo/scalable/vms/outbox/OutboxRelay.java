@@ -0,0 +1,123 @@
+package io.muzoo.scalable.vms.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.muzoo.scalable.vms.redis.RedisScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Publishes outbox rows to Redis in id order, one pipeline per batch, then deletes them. A Redis
+// lock keeps a single relay active across replicas; its lease is renewed before every batch and a
+// relay that finds it lost stops at once. Delivery is at-least-once: a crash between publish and
+// delete re-sends that batch.
+//
+// Id order is not commit order: IDENTITY ids are handed out at INSERT, so a transaction holding a
+// lower id can commit after a higher id was already relayed, and that event is published later.
+// Two events of one aggregate only keep their order when the transactions writing them are
+// serialized (e.g. both lock the aggregate's row); consumers of other events must not assume order.
+@Service
+public class OutboxRelay {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+    private static final String LOCK_KEY = "outbox:relay:lock";
+    private static final DefaultRedisScript<Long> RENEW_LOCK_SCRIPT = RedisScripts.load("renew_lock.lua", Long.class);
+    private static final DefaultRedisScript<Long> RELEASE_LOCK_SCRIPT = RedisScripts.load("release_lock.lua", Long.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final Duration lockLease;
+    private final Counter publishedEvents;
+    private final Timer publishLag;
+    // Age of the oldest event seen by the last relay run, 0 when the outbox was drained
+    private final AtomicLong oldestPendingMillis = new AtomicLong();
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       StringRedisTemplate stringRedisTemplate,
+                       MeterRegistry meterRegistry,
+                       @Value("${vms.outbox.relay.batch-size:500}") int batchSize,
+                       @Value("${vms.outbox.relay.max-batches-per-run:20}") int maxBatchesPerRun,
+                       @Value("${vms.outbox.relay.lock-lease:10s}") Duration lockLease) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.lockLease = lockLease;
+        this.publishedEvents = meterRegistry.counter("vms.outbox.published");
+        this.publishLag = Timer.builder("vms.outbox.lag")
+                .description("Time from outbox insert to Redis publish")
+                .register(meterRegistry);
+        meterRegistry.gauge("vms.outbox.oldest.age.ms", oldestPendingMillis);
+    }
+
+    @Scheduled(fixedDelayString = "${vms.outbox.relay.interval-ms:200}")
+    public void relay() {
+        String token = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY, token, lockLease))) {
+            return;
+        }
+        try {
+            for (int run = 0; run < maxBatchesPerRun; run++) {
+                // Another replica may take over once the lease lapses; two relays would interleave ids
+                if (run > 0 && !renewLock(token)) {
+                    logger.warn("Lost the outbox relay lock, stopping this run");
+                    return;
+                }
+                List<OutboxEvent> batch = outboxEventRepository.findOldest(batchSize);
+                if (batch.isEmpty()) {
+                    oldestPendingMillis.set(0);
+                    return;
+                }
+                Instant now = Instant.now();
+                oldestPendingMillis.set(Duration.between(batch.get(0).getCreatedAt(), now).toMillis());
+
+                publish(batch);
+                outboxEventRepository.deleteAllByIdInBatch(batch.stream().map(OutboxEvent::getId).toList());
+
+                Instant published = Instant.now();
+                for (OutboxEvent event : batch) {
+                    publishLag.record(Duration.between(event.getCreatedAt(), published));
+                }
+                publishedEvents.increment(batch.size());
+                if (batch.size() < batchSize) {
+                    oldestPendingMillis.set(0);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Outbox relay failed, pending events will be retried: {}", e.getMessage(), e);
+        } finally {
+            stringRedisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(LOCK_KEY), token);
+        }
+    }
+
+    private boolean renewLock(String token) {
+        Long renewed = stringRedisTemplate.execute(RENEW_LOCK_SCRIPT, List.of(LOCK_KEY),
+                token, String.valueOf(lockLease.toMillis()));
+        return renewed != null && renewed == 1;
+    }
+
+    private void publish(List<OutboxEvent> batch) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            for (OutboxEvent event : batch) {
+                redis.publish(event.getChannel(), event.getPayload());
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,26 @@
+package io.muzoo.scalable.vms.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+
+    // Must join the caller's transaction so the event commits (or rolls back) with the change itself
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void enqueue(String channel, String aggregateType, Object aggregateId, Object message) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize " + channel + " event: " + e.getMessage(), e);
+        }
+        outboxEventRepository.save(new OutboxEvent(channel, aggregateType, aggregateId.toString(), payload));
+    }
+}
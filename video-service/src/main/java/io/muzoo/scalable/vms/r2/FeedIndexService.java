@@ -0,0 +1,281 @@
+package io.muzoo.scalable.vms.r2;
+
+import io.muzoo.scalable.vms.Video;
+import io.muzoo.scalable.vms.VideoRepository;
+import io.muzoo.scalable.vms.VideoStatus;
+import io.muzoo.scalable.vms.redis.RedisScripts;
+import io.muzoo.scalable.vms.util.KeysetCursor;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Public feed kept as a Redis ZSET of video ids scored by upload time (epoch micros), so feed pages
+// are a ZREVRANGE plus a primary-key lookup instead of a sorted scan of vms_video_data. Members are
+// zero-padded ids: ZSET ties sort by member string, so padding makes them sort by numeric id and keeps
+// the (upload_time DESC, id DESC) order of the SQL queries.
+@Service
+@RequiredArgsConstructor
+public class FeedIndexService {
+    private static final Logger logger = LoggerFactory.getLogger(FeedIndexService.class);
+    private static final String FEED_KEY = "feed:public:v2";
+    private static final String LEGACY_FEED_KEY = "feed:public";
+    // Set once a complete rebuild has been swapped in; ids written by sync() alone never make it ready
+    private static final String READY_KEY = "feed:public:v2:ready";
+    private static final String REBUILD_LOCK_KEY = "feed:public:v2:rebuild:lock";
+    // Ids touched by sync()/remove(), scored by time, replayed after a rebuild swaps in its snapshot
+    private static final String CHANGES_KEY = "feed:public:v2:changes";
+    private static final Duration REBUILD_LEASE = Duration.ofMinutes(10);
+    private static final long CHANGE_RETENTION_MS = Duration.ofMinutes(15).toMillis();
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    // Bounds the top-up reads of one page when many consecutive entries are stale
+    private static final int MAX_TOP_UP_ROUNDS = 10;
+    // Replicas stamp CHANGES_KEY with their own clocks; stale removal leaves anything this recent alone
+    private static final long CLOCK_SKEW_MARGIN_MS = Duration.ofSeconds(5).toMillis();
+    private static final DefaultRedisScript<Long> RELEASE_LOCK_SCRIPT = RedisScripts.load("release_lock.lua", Long.class);
+    private static final DefaultRedisScript<Long> REMOVE_STALE_SCRIPT = RedisScripts.load("remove_stale_feed_entries.lua", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final VideoRepository videoRepository;
+
+    @Value("${vms.feed.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    public static boolean isListed(Video video) {
+        return "Public".equals(video.getVisibility()) && video.getStatus() == VideoStatus.UPLOADED;
+    }
+
+    private static String member(Long videoId) {
+        return String.format("%020d", videoId);
+    }
+
+    // Adds or removes the video depending on whether it currently belongs in the public feed
+    public void sync(Video video) {
+        try {
+            boolean listed = isListed(video);
+            String member = member(video.getId());
+            double score = score(video.getUploadTime());
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection redis = (StringRedisConnection) connection;
+                if (listed) {
+                    redis.zAdd(FEED_KEY, score, member);
+                } else {
+                    redis.zRem(FEED_KEY, member);
+                }
+                redis.zAdd(CHANGES_KEY, now, member);
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("Failed to update feed index for video {}: {}", video.getId(), e.getMessage());
+        }
+    }
+
+    public void remove(Long videoId) {
+        try {
+            String member = member(videoId);
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection redis = (StringRedisConnection) connection;
+                redis.zRem(FEED_KEY, member);
+                redis.zAdd(CHANGES_KEY, now, member);
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("Failed to remove video {} from feed index: {}", videoId, e.getMessage());
+        }
+    }
+
+    public boolean isReady() {
+        try {
+            Long existing = stringRedisTemplate.countExistingKeys(List.of(READY_KEY, FEED_KEY));
+            return existing != null && existing == 2;
+        } catch (Exception e) {
+            logger.warn("Feed index unavailable: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    // Offset paging over the index; entries that turn out stale are dropped and the page is topped up
+    public List<Video> page(int page, int size) {
+        long start = (long) (page - 1) * size;
+        List<Video> videos = new ArrayList<>(size);
+        for (int round = 0; round < MAX_TOP_UP_ROUNDS && videos.size() < size; round++) {
+            int want = size - videos.size();
+            Set<String> members = stringRedisTemplate.opsForZSet().reverseRange(FEED_KEY, start, start + want - 1);
+            if (members == null || members.isEmpty()) {
+                break;
+            }
+            List<Video> loaded = loadVideos(members.stream().map(Long::valueOf).toList());
+            videos.addAll(loaded);
+            // Stale entries were just removed, so the next unread entry has shifted down to here
+            start += loaded.size();
+            if (members.size() < want) {
+                break;
+            }
+        }
+        return videos;
+    }
+
+    // Keyset paging: keeps reading past stale entries until the page is full or the index ends, so a
+    // short page really means the end of the feed
+    public List<Video> pageBefore(KeysetCursor cursor, int size) {
+        double maxScore = score(cursor.time());
+        String cursorMember = member(cursor.id());
+        List<Video> videos = new ArrayList<>(size);
+        long offset = 0;
+        for (int round = 0; round < MAX_TOP_UP_ROUNDS && videos.size() < size; round++) {
+            Set<ZSetOperations.TypedTuple<String>> batch = stringRedisTemplate.opsForZSet()
+                    .reverseRangeByScoreWithScores(FEED_KEY, Double.NEGATIVE_INFINITY, maxScore, offset, size);
+            if (batch == null || batch.isEmpty()) {
+                break;
+            }
+            List<Long> candidates = new ArrayList<>(batch.size());
+            for (ZSetOperations.TypedTuple<String> entry : batch) {
+                // Entries sharing the cursor's timestamp are only "before" it when their id is lower
+                if (entry.getScore() != null && entry.getScore() == maxScore
+                        && entry.getValue().compareTo(cursorMember) >= 0) {
+                    continue;
+                }
+                candidates.add(Long.valueOf(entry.getValue()));
+            }
+            List<Video> loaded = loadVideos(candidates);
+            for (Video video : loaded) {
+                if (videos.size() == size) {
+                    break;
+                }
+                videos.add(video);
+            }
+            // Stale entries were just removed from the index, which shifts the remaining ones down
+            offset += batch.size() - (candidates.size() - loaded.size());
+            if (batch.size() < size) {
+                break;
+            }
+        }
+        return videos;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfMissing() {
+        if (rebuildOnStartup || !isReady()) {
+            rebuild();
+        }
+        stringRedisTemplate.delete(LEGACY_FEED_KEY);
+    }
+
+    // Builds the index into a per-run scratch key from the DB and swaps it in atomically. One replica
+    // rebuilds at a time; changes made while the DB scan ran are replayed from CHANGES_KEY afterwards,
+    // so the snapshot cannot undo a removal or miss a new upload.
+    public void rebuild() {
+        String token = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(REBUILD_LOCK_KEY, token, REBUILD_LEASE))) {
+            logger.info("Feed index rebuild already running on another replica");
+            return;
+        }
+        String scratchKey = FEED_KEY + ":rebuild:" + token;
+        long startedAtMs = System.currentTimeMillis();
+        try {
+            LocalDateTime startedAt = LocalDateTime.now().plusDays(1);
+            KeysetCursor position = new KeysetCursor(startedAt, Long.MAX_VALUE);
+            long indexed = 0;
+            while (true) {
+                List<Video> batch = videoRepository.findByVisibilityAndStatusBefore(
+                        "Public", position.time(), position.id(), REBUILD_BATCH_SIZE);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                Set<ZSetOperations.TypedTuple<String>> tuples = batch.stream()
+                        .map(v -> ZSetOperations.TypedTuple.of(member(v.getId()), score(v.getUploadTime())))
+                        .collect(Collectors.toSet());
+                stringRedisTemplate.opsForZSet().add(scratchKey, tuples);
+                indexed += batch.size();
+                Video last = batch.get(batch.size() - 1);
+                position = new KeysetCursor(last.getUploadTime(), last.getId());
+                if (batch.size() < REBUILD_BATCH_SIZE) {
+                    break;
+                }
+            }
+            if (indexed == 0) {
+                stringRedisTemplate.delete(List.of(FEED_KEY, READY_KEY));
+                logger.info("Feed index rebuild found no public videos");
+                return;
+            }
+            stringRedisTemplate.rename(scratchKey, FEED_KEY);
+            replayChangesSince(startedAtMs);
+            stringRedisTemplate.opsForValue().set(READY_KEY, "1");
+            logger.info("Rebuilt feed index with {} videos", indexed);
+        } catch (Exception e) {
+            logger.error("Failed to rebuild feed index: {}", e.getMessage(), e);
+            stringRedisTemplate.delete(scratchKey);
+        } finally {
+            stringRedisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(REBUILD_LOCK_KEY), token);
+        }
+    }
+
+    // Re-reads every video changed since the scan started (with a margin for in-flight transactions)
+    private void replayChangesSince(long startedAtMs) {
+        long since = startedAtMs - Duration.ofSeconds(30).toMillis();
+        Set<String> changed = stringRedisTemplate.opsForZSet().rangeByScore(CHANGES_KEY, since, Double.POSITIVE_INFINITY);
+        if (changed != null && !changed.isEmpty()) {
+            List<Long> ids = changed.stream().map(Long::valueOf).toList();
+            Map<Long, Video> byId = videoRepository.findAllById(ids).stream()
+                    .collect(Collectors.toMap(Video::getId, Function.identity()));
+            for (Long id : ids) {
+                Video video = byId.get(id);
+                if (video != null && isListed(video)) {
+                    stringRedisTemplate.opsForZSet().add(FEED_KEY, member(id), score(video.getUploadTime()));
+                } else {
+                    stringRedisTemplate.opsForZSet().remove(FEED_KEY, member(id));
+                }
+            }
+        }
+        stringRedisTemplate.opsForZSet().removeRangeByScore(CHANGES_KEY, Double.NEGATIVE_INFINITY,
+                System.currentTimeMillis() - CHANGE_RETENTION_MS);
+    }
+
+    // Batched PK lookup, returned in index order. Ids that are gone or no longer public are removed
+    // from the index so later pages and cursors stop running into them, unless a sync() since the read
+    // began says otherwise (the read may predate the commit that listed the video).
+    private List<Video> loadVideos(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        long readStartedAtMs = System.currentTimeMillis();
+        Map<Long, Video> byId = videoRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Video::getId, Function.identity()));
+        List<Video> videos = new ArrayList<>(ids.size());
+        List<String> stale = new ArrayList<>();
+        for (Long id : ids) {
+            Video video = byId.get(id);
+            if (video != null && isListed(video)) {
+                videos.add(video);
+            } else {
+                stale.add(member(id));
+            }
+        }
+        if (!stale.isEmpty()) {
+            stale.add(0, String.valueOf(readStartedAtMs - CLOCK_SKEW_MARGIN_MS));
+            stringRedisTemplate.execute(REMOVE_STALE_SCRIPT, List.of(FEED_KEY, CHANGES_KEY), stale.toArray());
+        }
+        return videos;
+    }
+
+    private static double score(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+}
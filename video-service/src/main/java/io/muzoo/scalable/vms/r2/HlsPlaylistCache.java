@@ -0,0 +1,153 @@
+package io.muzoo.scalable.vms.r2;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Function;
+
+// Rewritten HLS playlists per playlist key. The local tier loads each key once (concurrent misses
+// wait for the same load); the optional Redis tier lets replicas share a playlist instead of each
+// fetching it from R2. An entry lives until its shortest embedded segment URL gets close to expiry.
+// Streaming playlists (segment lines pointing at the redirect endpoint) are kept per video id; they
+// embed no signatures, so they only expire on a fixed TTL or explicit invalidation.
+@Component
+public class HlsPlaylistCache {
+    private static final Logger logger = LoggerFactory.getLogger(HlsPlaylistCache.class);
+    private static final String REDIS_KEY_PREFIX = "hls:playlist:";
+
+    public record CachedPlaylist(String content, Instant expiresAt) {
+    }
+
+    public record StreamingPlaylist(String userId, String visibility, String content, List<String> segmentKeys) {
+    }
+
+    private final Cache<String, CachedPlaylist> localCache;
+    private final Cache<Long, StreamingPlaylist> streamingCache;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final PresignedUrlCache presignedUrlCache;
+    private final boolean redisEnabled;
+
+    public HlsPlaylistCache(@Value("${cloudflare.r2.hls.cache.max-size:2000}") long maxSize,
+                            @Value("${cloudflare.r2.hls.cache.redis-enabled:false}") boolean redisEnabled,
+                            @Value("${cloudflare.r2.hls.streaming.cache-ttl:10m}") Duration streamingTtl,
+                            StringRedisTemplate stringRedisTemplate,
+                            PresignedUrlCache presignedUrlCache,
+                            MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.presignedUrlCache = presignedUrlCache;
+        this.redisEnabled = redisEnabled;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, CachedPlaylist>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedPlaylist value, long currentTime) {
+                        return reusableFor(value).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedPlaylist value, long currentTime, long currentDuration) {
+                        return reusableFor(value).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedPlaylist value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, "hls-playlists");
+        this.streamingCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(streamingTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, streamingCache, "hls-streaming-playlists");
+    }
+
+    public String get(String playlistKey, Function<String, CachedPlaylist> loader) {
+        return localCache.get(playlistKey, key -> loadShared(key, loader)).content();
+    }
+
+    public StreamingPlaylist getStreaming(Long videoId, Function<Long, StreamingPlaylist> loader) {
+        return streamingCache.get(videoId, loader);
+    }
+
+    public void invalidateStreaming(Long videoId) {
+        streamingCache.invalidate(videoId);
+    }
+
+    public void invalidate(String playlistKey) {
+        if (playlistKey == null || playlistKey.isEmpty()) {
+            return;
+        }
+        localCache.invalidate(playlistKey);
+        if (redisEnabled) {
+            try {
+                stringRedisTemplate.delete(REDIS_KEY_PREFIX + playlistKey);
+            } catch (Exception e) {
+                logger.warn("Failed to evict shared HLS playlist {}: {}", playlistKey, e.getMessage());
+            }
+        }
+    }
+
+    private CachedPlaylist loadShared(String playlistKey, Function<String, CachedPlaylist> loader) {
+        if (redisEnabled) {
+            CachedPlaylist shared = readShared(playlistKey);
+            if (shared != null && !reusableFor(shared).isZero()) {
+                return shared;
+            }
+        }
+        CachedPlaylist loaded = loader.apply(playlistKey);
+        if (redisEnabled) {
+            writeShared(playlistKey, loaded);
+        }
+        return loaded;
+    }
+
+    // Stored as "<expiresAtEpochMillis>\n<playlist>" so a single GET restores both
+    private CachedPlaylist readShared(String playlistKey) {
+        try {
+            String stored = stringRedisTemplate.opsForValue().get(REDIS_KEY_PREFIX + playlistKey);
+            if (stored == null) {
+                return null;
+            }
+            int separator = stored.indexOf('\n');
+            Instant expiresAt = Instant.ofEpochMilli(Long.parseLong(stored.substring(0, separator)));
+            return new CachedPlaylist(stored.substring(separator + 1), expiresAt);
+        } catch (Exception e) {
+            logger.warn("Failed to read shared HLS playlist {}: {}", playlistKey, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeShared(String playlistKey, CachedPlaylist playlist) {
+        Duration ttl = reusableFor(playlist);
+        if (ttl.isZero()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().set(REDIS_KEY_PREFIX + playlistKey,
+                    playlist.expiresAt().toEpochMilli() + "\n" + playlist.content(), ttl);
+        } catch (Exception e) {
+            logger.warn("Failed to store shared HLS playlist {}: {}", playlistKey, e.getMessage());
+        }
+    }
+
+    private Duration reusableFor(CachedPlaylist playlist) {
+        Duration remaining = Duration.between(Instant.now(), playlist.expiresAt())
+                .minus(presignedUrlCache.getSafetyMargin());
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+}
@@ -0,0 +1,177 @@
+package io.muzoo.scalable.vms.r2;
+
+import io.muzoo.scalable.vms.Video;
+import io.muzoo.scalable.vms.VideoLikeRepository;
+import io.muzoo.scalable.vms.VideoRepository;
+import io.muzoo.scalable.vms.notifications.ActivityStreams;
+import io.muzoo.scalable.vms.redis.RedisScripts;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Like state lives in Redis (a liker set and a counter per video) and is toggled by one Lua script;
+// LikeWriteBehind persists the queued changes to video_likes / vms_video_data afterwards. Both keys
+// expire after state-ttl without access, so only videos that are being watched stay resident.
+@Service
+@RequiredArgsConstructor
+public class LikeEngine {
+    public static final String PENDING_KEY = "likes:pending";
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> TOGGLE_SCRIPT = RedisScripts.load("toggle_like.lua", List.class);
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = RedisScripts.load("load_likes.lua", Long.class);
+    private static final DefaultRedisScript<Long> LOAD_USER_SCRIPT = RedisScripts.load("load_user_likes.lua", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final VideoRepository videoRepository;
+    private final VideoLikeRepository videoLikeRepository;
+
+    @Value("${vms.likes.state-ttl:1d}")
+    private Duration stateTtl;
+
+    public record LikeState(boolean liked, long likeCount) {
+    }
+
+    public static String likersKey(Long videoId) {
+        return "video:" + videoId + ":likers";
+    }
+
+    public static String counterKey(Long videoId) {
+        return "video:" + videoId + ":likes";
+    }
+
+    // Bitmap of the videos a user likes, offset = video id
+    public static String userLikesKey(String userId) {
+        return "user:" + userId + ":liked";
+    }
+
+    public LikeState toggle(Long videoId, String userId) {
+        List<String> keys = List.of(likersKey(videoId), counterKey(videoId), "video:" + videoId + ":vips",
+                PENDING_KEY, userLikesKey(userId), ActivityStreams.followingKey(userId));
+        for (int attempt = 0; attempt < 2; attempt++) {
+            @SuppressWarnings("unchecked")
+            List<Long> result = stringRedisTemplate.execute(TOGGLE_SCRIPT, keys, videoId.toString(), userId,
+                    String.valueOf(ActivityStreams.FOLLOWING_LIMIT), String.valueOf(stateTtl.toSeconds()));
+            if (result != null && result.get(0) >= 0) {
+                return new LikeState(result.get(0) == 1L, result.get(1));
+            }
+            load(videoId);
+        }
+        throw new IllegalStateException("Like state for video " + videoId + " could not be loaded");
+    }
+
+    public boolean isLiked(Long videoId, String userId) {
+        List<Object> results = readAndTouch(videoId, redis -> redis.sIsMember(likersKey(videoId), userId));
+        if (results.get(0) == null) {
+            load(videoId);
+            results = readAndTouch(videoId, redis -> redis.sIsMember(likersKey(videoId), userId));
+        }
+        return Boolean.TRUE.equals(results.get(1));
+    }
+
+    public long likeCount(Long videoId) {
+        List<Object> results = readAndTouch(videoId, redis -> redis.get(counterKey(videoId)));
+        if (results.get(0) == null) {
+            load(videoId);
+            results = readAndTouch(videoId, redis -> redis.get(counterKey(videoId)));
+        }
+        Object count = results.get(0);
+        return count != null ? Long.parseLong(count.toString()) : 0L;
+    }
+
+    // One round trip: GET counter (null when cold), the read, then the TTL refresh of both keys
+    private List<Object> readAndTouch(Long videoId, Consumer<StringRedisConnection> read) {
+        long ttlSeconds = stateTtl.toSeconds();
+        return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            redis.get(counterKey(videoId));
+            read.accept(redis);
+            redis.expire(counterKey(videoId), ttlSeconds);
+            redis.expire(likersKey(videoId), ttlSeconds);
+            return null;
+        });
+    }
+
+    // Liked flag and like count for every id in one pipelined round trip (GETBIT + GET per video)
+    public Map<Long, LikeState> bulkStatus(String userId, List<Long> videoIds) {
+        // Offset 0 is the loaded marker and GETBIT rejects negative offsets
+        if (videoIds.stream().anyMatch(id -> id == null || id < 1)) {
+            throw new IllegalArgumentException("Video ids must be positive");
+        }
+        List<Object> results = fetchBulk(userId, videoIds);
+        if (!Boolean.TRUE.equals(results.get(0))) {
+            loadUserLikes(userId);
+            results = fetchBulk(userId, videoIds);
+        }
+
+        Map<Long, LikeState> states = new LinkedHashMap<>();
+        List<Long> missingCounts = new ArrayList<>();
+        for (int i = 0; i < videoIds.size(); i++) {
+            Long videoId = videoIds.get(i);
+            boolean liked = Boolean.TRUE.equals(results.get(1 + 2 * i));
+            Object count = results.get(2 + 2 * i);
+            if (count == null) {
+                missingCounts.add(videoId);
+            }
+            states.put(videoId, new LikeState(liked, count != null ? Long.parseLong(count.toString()) : 0L));
+        }
+        // Cold counters fall back to the persisted like_count rather than loading every liker set
+        if (!missingCounts.isEmpty()) {
+            for (Video video : videoRepository.findAllById(missingCounts)) {
+                states.computeIfPresent(video.getId(), (id, state) -> new LikeState(state.liked(), video.getLikeCount()));
+            }
+        }
+        return states;
+    }
+
+    private List<Object> fetchBulk(String userId, List<Long> videoIds) {
+        String bitmapKey = userLikesKey(userId);
+        return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            redis.getBit(bitmapKey, 0);
+            for (Long videoId : videoIds) {
+                redis.getBit(bitmapKey, videoId);
+                redis.get(counterKey(videoId));
+            }
+            return null;
+        });
+    }
+
+    private void loadUserLikes(String userId) {
+        List<Long> likedVideoIds = videoLikeRepository.findVideoIdsByUserId(userId);
+        List<String> args = new ArrayList<>(likedVideoIds.size() + 1);
+        args.add(userId);
+        likedVideoIds.forEach(id -> args.add(String.valueOf(id)));
+        stringRedisTemplate.execute(LOAD_USER_SCRIPT,
+                List.of(userLikesKey(userId), LikeWriteBehind.PROCESSING_KEY, PENDING_KEY), args.toArray());
+    }
+
+    public void evict(Long videoId) {
+        stringRedisTemplate.delete(List.of(likersKey(videoId), counterKey(videoId)));
+    }
+
+    // Seeds the liker set from video_likes plus the queued changes; only the first loader wins
+    private void load(Long videoId) {
+        if (!videoRepository.existsById(videoId)) {
+            throw new IllegalArgumentException("Video not found with ID: " + videoId);
+        }
+        List<String> likers = videoLikeRepository.findUserIdsByVideoId(videoId);
+        List<String> args = new ArrayList<>(likers.size() + 2);
+        args.add(videoId.toString());
+        args.add(String.valueOf(stateTtl.toSeconds()));
+        args.addAll(likers);
+        stringRedisTemplate.execute(LOAD_SCRIPT,
+                List.of(likersKey(videoId), counterKey(videoId), LikeWriteBehind.PROCESSING_KEY, PENDING_KEY), args.toArray());
+    }
+}
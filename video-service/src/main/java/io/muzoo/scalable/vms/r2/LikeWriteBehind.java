@@ -0,0 +1,149 @@
+package io.muzoo.scalable.vms.r2;
+
+import io.muzoo.scalable.vms.redis.RedisScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.*;
+
+// Drains the like changes queued by toggle_like.lua and applies them to MariaDB in batches. Only the
+// last change per (video, user) in a batch is written, and like_count is copied from the Redis counter.
+// A batch is moved to a processing list before the DB write and only deleted after the commit; a
+// lock keeps one drainer across replicas, and whatever a dead drainer left in processing is replayed
+// first (every write here is idempotent, and those entries are older than anything still pending).
+@Service
+public class LikeWriteBehind {
+    private static final Logger logger = LoggerFactory.getLogger(LikeWriteBehind.class);
+    static final String PROCESSING_KEY = "likes:pending:processing";
+    private static final String LOCK_KEY = "likes:pending:lock";
+    private static final Duration LOCK_LEASE = Duration.ofSeconds(30);
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT = RedisScripts.load("claim_pending_likes.lua", List.class);
+    private static final DefaultRedisScript<Long> RENEW_LOCK_SCRIPT = RedisScripts.load("renew_lock.lua", Long.class);
+    private static final DefaultRedisScript<Long> RELEASE_LOCK_SCRIPT = RedisScripts.load("release_lock.lua", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public LikeWriteBehind(StringRedisTemplate stringRedisTemplate,
+                           JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           @Value("${vms.likes.write-behind.batch-size:1000}") int batchSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+    }
+
+    private record LikeKey(long videoId, String userId) {
+    }
+
+    @Scheduled(fixedDelayString = "${vms.likes.write-behind.interval-ms:1000}")
+    public void persistPendingLikes() {
+        String token = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY, token, LOCK_LEASE))) {
+            return;
+        }
+        try {
+            List<String> unacked = stringRedisTemplate.opsForList().range(PROCESSING_KEY, 0, -1);
+            if (unacked != null && !unacked.isEmpty()) {
+                logger.info("Replaying {} like changes left unacknowledged by a previous run", unacked.size());
+                apply(unacked);
+                stringRedisTemplate.delete(PROCESSING_KEY);
+            }
+            List<String> entries;
+            do {
+                if (!renewLock(token)) {
+                    logger.warn("Lost the like write-behind lock, stopping this run");
+                    return;
+                }
+                @SuppressWarnings("unchecked")
+                List<String> claimed = stringRedisTemplate.execute(CLAIM_SCRIPT,
+                        List.of(LikeEngine.PENDING_KEY, PROCESSING_KEY), String.valueOf(batchSize));
+                entries = claimed;
+                if (entries == null || entries.isEmpty()) {
+                    return;
+                }
+                apply(entries);
+                // Ack: the batch is committed
+                stringRedisTemplate.delete(PROCESSING_KEY);
+            } while (entries.size() == batchSize);
+        } catch (Exception e) {
+            logger.error("Failed to persist like changes, keeping them in {} for the next run: {}",
+                    PROCESSING_KEY, e.getMessage(), e);
+        } finally {
+            stringRedisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(LOCK_KEY), token);
+        }
+    }
+
+    private boolean renewLock(String token) {
+        Long renewed = stringRedisTemplate.execute(RENEW_LOCK_SCRIPT, List.of(LOCK_KEY),
+                token, String.valueOf(LOCK_LEASE.toMillis()));
+        return renewed != null && renewed == 1;
+    }
+
+    private void apply(List<String> entries) {
+        // entry format: <videoId>:<1|0>:<userId>
+        Map<LikeKey, Boolean> latest = new LinkedHashMap<>();
+        Set<Long> videoIds = new LinkedHashSet<>();
+        for (String entry : entries) {
+            String[] parts = entry.split(":", 3);
+            long videoId = Long.parseLong(parts[0]);
+            latest.put(new LikeKey(videoId, parts[2]), "1".equals(parts[1]));
+            videoIds.add(videoId);
+        }
+
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        latest.forEach((key, liked) -> (liked ? inserts : deletes).add(new Object[]{key.videoId(), key.userId()}));
+
+        List<Long> ids = new ArrayList<>(videoIds);
+        List<String> counts = stringRedisTemplate.opsForValue()
+                .multiGet(ids.stream().map(LikeEngine::counterKey).toList());
+        List<Object[]> countUpdates = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String count = counts != null ? counts.get(i) : null;
+            if (count != null) {
+                countUpdates.add(new Object[]{Math.max(0L, Long.parseLong(count)), ids.get(i)});
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            // Changes for videos deleted since they were queued are dropped; inserting them would leave
+            // orphan like rows (or fail on a foreign key and block the queue)
+            Set<Long> existing = existingVideoIds(ids);
+            if (existing.size() < ids.size()) {
+                inserts.removeIf(row -> !existing.contains((Long) row[0]));
+                deletes.removeIf(row -> !existing.contains((Long) row[0]));
+                logger.info("Dropped like changes for {} deleted videos", ids.size() - existing.size());
+            }
+            if (!inserts.isEmpty()) {
+                jdbcTemplate.batchUpdate("INSERT IGNORE INTO video_likes (video_id, user_id) VALUES (?, ?)", inserts);
+            }
+            if (!deletes.isEmpty()) {
+                jdbcTemplate.batchUpdate("DELETE FROM video_likes WHERE video_id = ? AND user_id = ?", deletes);
+            }
+            if (!countUpdates.isEmpty()) {
+                jdbcTemplate.batchUpdate("UPDATE vms_video_data SET like_count = ? WHERE id = ?", countUpdates);
+            }
+        });
+        logger.debug("Persisted {} like changes across {} videos", latest.size(), videoIds.size());
+    }
+
+    private Set<Long> existingVideoIds(List<Long> ids) {
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM vms_video_data WHERE id IN (" + placeholders + ")", Long.class, ids.toArray()));
+    }
+}
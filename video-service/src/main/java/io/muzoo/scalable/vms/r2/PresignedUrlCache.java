@@ -0,0 +1,75 @@
+package io.muzoo.scalable.vms.r2;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Function;
+
+// Keeps presigned GET URLs per object key until shortly before their signature expires,
+// so feed/my/HLS rendering doesn't run a SigV4 signature for every item on every request.
+@Component
+public class PresignedUrlCache {
+
+    public record PresignedUrl(String url, Instant expiresAt) {
+    }
+
+    private final Cache<String, PresignedUrl> cache;
+    private final Duration safetyMargin;
+
+    public PresignedUrlCache(@Value("${cloudflare.r2.presign.cache.max-size:50000}") long maxSize,
+                             @Value("${cloudflare.r2.presign.cache.safety-margin:1h}") Duration safetyMargin,
+                             MeterRegistry meterRegistry) {
+        this.safetyMargin = safetyMargin;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, PresignedUrl>() {
+                    @Override
+                    public long expireAfterCreate(String key, PresignedUrl value, long currentTime) {
+                        return reusableFor(value);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, PresignedUrl value, long currentTime, long currentDuration) {
+                        return reusableFor(value);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, PresignedUrl value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "presigned-urls");
+    }
+
+    public PresignedUrl get(String objectKey, Function<String, PresignedUrl> signer) {
+        return cache.get(objectKey, signer);
+    }
+
+    public void invalidate(String objectKey) {
+        cache.invalidate(objectKey);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public Duration getSafetyMargin() {
+        return safetyMargin;
+    }
+
+    // Nanoseconds the URL may still be handed out: its remaining lifetime minus the safety margin
+    private long reusableFor(PresignedUrl value) {
+        Duration remaining = Duration.between(Instant.now(), value.expiresAt()).minus(safetyMargin);
+        return remaining.isNegative() ? 0L : remaining.toNanos();
+    }
+}
@@ -0,0 +1,52 @@
+package io.muzoo.scalable.vms.r2;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+// Short-lived HMAC tokens for the segment links of private streaming playlists. A token covers one
+// video until its expiry, so a leaked playlist stops working after the TTL and names no user.
+@Component
+public class SegmentTokens {
+    private final SecretKeySpec key;
+    private final Duration ttl;
+
+    public SegmentTokens(@Value("${vms.streaming.segment-token.secret:${cloudflare.r2.secret-key}}") String secret,
+                         @Value("${vms.streaming.segment-token.ttl:1h}") Duration ttl) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.ttl = ttl;
+    }
+
+    // Query string for the segment links of a playlist served now
+    public String issue(Long videoId) {
+        long expires = Instant.now().plus(ttl).getEpochSecond();
+        return "expires=" + expires + "&token=" + sign(videoId, expires);
+    }
+
+    public boolean verify(Long videoId, Long expires, String token) {
+        if (expires == null || token == null || Instant.now().getEpochSecond() > expires) {
+            return false;
+        }
+        return MessageDigest.isEqual(sign(videoId, expires).getBytes(StandardCharsets.US_ASCII),
+                token.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private String sign(Long videoId, long expires) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            byte[] signature = mac.doFinal((videoId + ":" + expires).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign segment token", e);
+        }
+    }
+}
@@ -10,7 +10,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.net.URI;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -77,9 +79,18 @@ public class VideoController {
     @GetMapping("/feed")
     public ResponseEntity<Map<String, Object>> getVideoFeed(
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor) {
+        List<Video> feed;
+        try {
+            feed = cursor != null ? videoService.getVideoFeed(cursor, size) : videoService.getVideoFeed(page, size);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        Map<Long, VideoService.VideoCounters> counters = videoService.getCounters(feed);
         Map<String, Object> response = new HashMap<>();
-        response.put("videos", videoService.getVideoFeed(page, size).stream()
+        response.put("nextCursor", VideoService.nextCursor(feed, size));
+        response.put("videos", feed.stream()
                 .map(v -> {
                     Map<String, Object> videoInfo = new HashMap<>();
                     videoInfo.put("id", v.getId());
@@ -87,8 +98,8 @@ public class VideoController {
                     videoInfo.put("thumbnailUrl", videoService.generatePresignedDownloadUrl(v.getThumbnailUrl()));
                     videoInfo.put("userId", v.getUserId());
                     videoInfo.put("uploadTime", v.getUploadTime().toString());
-                    videoInfo.put("viewCount", v.getViewCount());
-                    videoInfo.put("likeCount", videoService.getLikeCount(v.getId()));
+                    videoInfo.put("viewCount", counters.get(v.getId()).viewCount());
+                    videoInfo.put("likeCount", counters.get(v.getId()).likeCount());
                     return videoInfo;
                 })
                 .collect(Collectors.toList()));
@@ -99,9 +110,20 @@ public class VideoController {
     public ResponseEntity<Map<String, Object>> getMyVideos(
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor,
             @RequestHeader("X-User-Id") String userId) {
+        List<Video> myVideos;
+        try {
+            myVideos = cursor != null
+                    ? videoService.getMyVideos(cursor, size, userId)
+                    : videoService.getMyVideos(page, size, userId);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        Map<Long, VideoService.VideoCounters> counters = videoService.getCounters(myVideos);
         Map<String, Object> response = new HashMap<>();
-        List<VideoDetailsResponseDTO> videos = videoService.getMyVideos(page, size, userId).stream()
+        response.put("nextCursor", VideoService.nextCursor(myVideos, size));
+        List<VideoDetailsResponseDTO> videos = myVideos.stream()
                 .map(video -> {
                     String thumbnailUrl = video.getStatus() == VideoStatus.UPLOADED
                             ? videoService.generatePresignedDownloadUrl(video.getThumbnailUrl())
@@ -122,8 +144,8 @@ public class VideoController {
                             .uploadTime(video.getUploadTime().toString())
                             .status(video.getStatus())
                             .visibility(video.getVisibility())
-                            .viewCount(video.getViewCount())
-                            .likeCount(videoService.getLikeCount(video.getId()))
+                            .viewCount(counters.get(video.getId()).viewCount())
+                            .likeCount(counters.get(video.getId()).likeCount())
                             .build();
                 })
                 .collect(Collectors.toList());
@@ -134,10 +156,11 @@ public class VideoController {
     @GetMapping("/details")
     public ResponseEntity<VideoDetailsResponseDTO> getVideoDetails(
             @RequestParam("videoId") Long videoId,
-            @RequestParam("userId") String userId) {
+            @RequestParam("userId") String userId,
+            @RequestParam(value = "mode", required = false) String mode) {
         System.out.println("Received request for /api/videos/details with videoId=" + videoId + ", userId=" + userId);
         try {
-            VideoDetailsResponseDTO videoDetails = videoService.getVideoDetails(videoId, userId);
+            VideoDetailsResponseDTO videoDetails = videoService.getVideoDetails(videoId, userId, "streaming".equals(mode));
             System.out.println("Successfully fetched video details for videoId=" + videoId);
             return ResponseEntity.ok(videoDetails);
         } catch (IllegalArgumentException e) {
@@ -152,6 +175,35 @@ public class VideoController {
         }
     }
 
+    @GetMapping(value = "/{id}/playlist.m3u8", produces = "application/vnd.apple.mpegurl")
+    public ResponseEntity<String> getStreamingPlaylist(
+            @PathVariable Long id,
+            @RequestParam(value = "userId", required = false) String userId) {
+        try {
+            return ResponseEntity.ok(videoService.getStreamingPlaylist(id, userId));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (SecurityException e) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, e.getMessage(), e);
+        }
+    }
+
+    @GetMapping("/{id}/segments/{segmentIndex}")
+    public ResponseEntity<Void> redirectToSegment(
+            @PathVariable Long id,
+            @PathVariable int segmentIndex,
+            @RequestParam(value = "expires", required = false) Long expires,
+            @RequestParam(value = "token", required = false) String token) {
+        try {
+            String segmentUrl = videoService.getSegmentUrl(id, segmentIndex, expires, token);
+            return ResponseEntity.status(HttpStatus.FOUND).location(URI.create(segmentUrl)).build();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (SecurityException e) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, e.getMessage(), e);
+        }
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<Void> updateVideoMetadata(
             @PathVariable Long id,
@@ -166,6 +218,7 @@ public class VideoController {
         if (updates.containsKey("description")) video.setDescription(updates.get("description"));
         if (updates.containsKey("visibility")) video.setVisibility(updates.get("visibility"));
         videoService.getVideoRepository().save(video);
+        videoService.onVideoEdited(video);
         return ResponseEntity.ok().build();
     }
 
@@ -202,6 +255,26 @@ public class VideoController {
         return ResponseEntity.ok(response);
     }
 
+    // Liked flags and counts for a whole page of cards: /likes/status?ids=1,2,3
+    @GetMapping("/likes/status")
+    public ResponseEntity<Map<Long, Map<String, Object>>> getLikeStatuses(
+            @RequestParam("ids") List<Long> ids,
+            @RequestHeader("X-User-Id") String userId) {
+        if (ids.size() > 100) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most 100 ids per request");
+        }
+        Map<Long, LikeEngine.LikeState> states;
+        try {
+            states = videoService.getLikeStatuses(userId, ids);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        Map<Long, Map<String, Object>> response = new LinkedHashMap<>();
+        states.forEach((videoId, state) ->
+                response.put(videoId, Map.of("isLiked", state.liked(), "likeCount", state.likeCount())));
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/{id}/view-count-total")
     public ResponseEntity<Map<String, Long>> getViewCountTotal(@PathVariable Long id) {
         String mainKey = "video:" + id + ":views";
@@ -1,17 +1,20 @@
 package io.muzoo.scalable.vms.r2;
 
 import io.muzoo.scalable.vms.*;
+import io.muzoo.scalable.vms.comments.RecentCommentsCache;
+import io.muzoo.scalable.vms.events.LikeCountEvent;
+import io.muzoo.scalable.vms.outbox.OutboxService;
 import io.muzoo.scalable.vms.redis.RedisPublisher;
+import io.muzoo.scalable.vms.util.KeysetCursor;
 import jakarta.transaction.Transactional;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.rest.webmvc.ResourceNotFoundException;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
@@ -23,11 +26,15 @@ import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignReques
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 @Service
@@ -37,15 +44,25 @@ public class VideoService {
     private final S3Client s3Client;
     @Getter
     private final VideoRepository videoRepository;
-    private final VideoLikeRepository videoLikeRepository;
     private final RedisPublisher redisPublisher;
-    private final RedisTemplate<String, Object> redisTemplate;
     private final RedisTemplate<String, Long> redisTemplateLong;
-    private final StringRedisTemplate stringRedisTemplate;
+    private final PresignedUrlCache presignedUrlCache;
+    private final HlsPlaylistCache hlsPlaylistCache;
+    private final FeedIndexService feedIndexService;
+    private final ViewCountAggregator viewCountAggregator;
+    private final LikeEngine likeEngine;
+    private final RecentCommentsCache recentCommentsCache;
+    private final OutboxService outboxService;
+    private final SegmentTokens segmentTokens;
+
+    private static final String SEGMENT_TOKEN_PLACEHOLDER = "{segment-token}";
 
     @Value("${cloudflare.r2.bucket-name}")
     private String bucketName;
 
+    @Value("${cloudflare.r2.presign.download-expiry:24h}")
+    private Duration downloadUrlExpiry;
+
     // Class to hold presigned URL and objectKey
     @Getter
     public static class PresignedUploadResponse {
@@ -75,20 +92,29 @@ public class VideoService {
     }
 
     public String generatePresignedDownloadUrl(String objectKey) {
+        PresignedUrlCache.PresignedUrl presignedUrl = getPresignedDownloadUrl(objectKey);
+        return presignedUrl != null ? presignedUrl.url() : null;
+    }
+
+    public PresignedUrlCache.PresignedUrl getPresignedDownloadUrl(String objectKey) {
         if (objectKey == null || objectKey.isEmpty()) {
             System.out.println("Skipping presigned URL generation: objectKey is null or empty");
             return null;
         }
+        return presignedUrlCache.get(objectKey, this::presignDownloadUrl);
+    }
+
+    private PresignedUrlCache.PresignedUrl presignDownloadUrl(String objectKey) {
         GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                 .bucket(bucketName)
                 .key(objectKey)
                 .build();
         GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
-                .signatureDuration(Duration.ofHours(24))
+                .signatureDuration(downloadUrlExpiry)
                 .getObjectRequest(getObjectRequest)
                 .build();
         PresignedGetObjectRequest presignedRequest = s3Presigner.presignGetObject(presignRequest);
-        return presignedRequest.url().toString();
+        return new PresignedUrlCache.PresignedUrl(presignedRequest.url().toString(), presignedRequest.expiration());
     }
 
     @Transactional
@@ -109,8 +135,8 @@ public class VideoService {
         Video savedVideo = videoRepository.save(video);
         String videoId = savedVideo.getId().toString();
         Map<String, String> message = Map.of("video_id", videoId, "s3_key", objectKey, "user_id", userId);
-        System.out.println("Publishing to video:process channel: video_id=" + videoId + ", s3_key=" + objectKey);
-        redisPublisher.publish("video:process", message);
+        System.out.println("Queueing video:process event: video_id=" + videoId + ", s3_key=" + objectKey);
+        outboxService.enqueue("video:process", "video", videoId, message);
         return savedVideo;
     }
 
@@ -123,26 +149,77 @@ public class VideoService {
                     System.out.println("Video not found with ID: " + videoId);
                     return new IllegalArgumentException("Video not found with ID: " + videoId);
                 });
+        // Redelivered events (stream reclaim, retries) are no-ops once the same metadata is applied
+        if (video.getStatus() == VideoStatus.UPLOADED
+                && Objects.equals(video.getHlsPlaylistUrl(), hlsPlaylistUrl)
+                && Objects.equals(video.getThumbnailUrl(), thumbnailUrl)
+                && Objects.equals(video.getChunkedUrl(), convertedUrl)
+                && Objects.equals(video.getDuration(), duration)) {
+            System.out.println("Metadata for video ID: " + videoId + " already applied, skipping");
+            return video;
+        }
+        String previousPlaylistUrl = video.getHlsPlaylistUrl();
+        // After commit, so a concurrent reader cannot re-cache the old playlist from the old row
+        afterCommit(() -> {
+            hlsPlaylistCache.invalidate(previousPlaylistUrl);
+            hlsPlaylistCache.invalidate(hlsPlaylistUrl);
+            hlsPlaylistCache.invalidateStreaming(videoId);
+        });
         video.setHlsPlaylistUrl(hlsPlaylistUrl);
         video.setThumbnailUrl(thumbnailUrl);
         video.setChunkedUrl(convertedUrl);
         video.setDuration(duration);
         video.setStatus(VideoStatus.UPLOADED);
         Video updatedVideo = videoRepository.save(video);
+        // Not before commit: a feed read in between would see PROCESSING and drop the new entry
+        afterCommit(() -> feedIndexService.sync(updatedVideo));
         System.out.println("Updated video metadata for ID: " + videoId + ", status: " + VideoStatus.UPLOADED);
         return updatedVideo;
     }
 
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
     public List<Video> getVideoFeed(int page, int size) {
         if (page < 1 || size < 1) {
             throw new IllegalArgumentException("Page and size must be positive integers");
         }
+        if (feedIndexService.isReady()) {
+            return feedIndexService.page(page, size);
+        }
         int offset = (page - 1) * size;
         return videoRepository.findByVisibilityAndStatus("Public", size, offset);
     }
 
+    public List<Video> getVideoFeed(String cursor, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be a positive integer");
+        }
+        KeysetCursor position = KeysetCursor.decode(cursor);
+        if (feedIndexService.isReady()) {
+            return feedIndexService.pageBefore(position, size);
+        }
+        return videoRepository.findByVisibilityAndStatusBefore("Public", position.time(), position.id(), size);
+    }
+
     @Transactional
     public VideoDetailsResponseDTO getVideoDetails(Long videoId, String userId) {
+        return getVideoDetails(videoId, userId, false);
+    }
+
+    // In streaming mode hlsUrl is the playlist endpoint instead of the playlist body
+    @Transactional
+    public VideoDetailsResponseDTO getVideoDetails(Long videoId, String userId, boolean streaming) {
         System.out.println("Attempting to fetch video with ID: " + videoId + " for userId: " + userId);
         Video video = videoRepository.findByIdNative(videoId)
                 .orElseThrow(() -> {
@@ -157,7 +234,9 @@ public class VideoService {
             throw new SecurityException("Access denied: Video is private or not owned by the user");
         }
 
-        String hlsPlaylistContent = getRewrittenHlsPlaylist(video.getHlsPlaylistUrl());
+        String hlsPlaylistContent = streaming
+                ? "/api/videos/" + videoId + "/playlist.m3u8?userId=" + URLEncoder.encode(userId, StandardCharsets.UTF_8)
+                : getRewrittenHlsPlaylist(video.getHlsPlaylistUrl());
         String thumbnailUrl = generatePresignedDownloadUrl(video.getThumbnailUrl());
         String convertedUrl = video.getChunkedUrl() != null ? generatePresignedDownloadUrl(video.getChunkedUrl()) : null;
 
@@ -184,6 +263,91 @@ public class VideoService {
     }
 
     private String getRewrittenHlsPlaylist(String hlsPlaylistKey) {
+        return hlsPlaylistCache.get(hlsPlaylistKey, this::loadRewrittenHlsPlaylist);
+    }
+
+    private HlsPlaylistCache.CachedPlaylist loadRewrittenHlsPlaylist(String hlsPlaylistKey) {
+        String playlistContent = readHlsPlaylist(hlsPlaylistKey);
+        String basePath = hlsPlaylistKey.substring(0, hlsPlaylistKey.lastIndexOf('/') + 1);
+        StringBuilder rewrittenPlaylist = new StringBuilder();
+        Instant expiresAt = Instant.now().plus(downloadUrlExpiry);
+        for (String line : playlistContent.split("\n")) {
+            if (line.endsWith(".ts")) {
+                String segmentKey = basePath + line;
+                PresignedUrlCache.PresignedUrl presignedSegmentUrl = getPresignedDownloadUrl(segmentKey);
+                rewrittenPlaylist.append(presignedSegmentUrl.url()).append("\n");
+                if (presignedSegmentUrl.expiresAt().isBefore(expiresAt)) {
+                    expiresAt = presignedSegmentUrl.expiresAt();
+                }
+            } else {
+                rewrittenPlaylist.append(line).append("\n");
+            }
+        }
+        System.out.println("Rewrote HLS playlist " + hlsPlaylistKey + ", valid until " + expiresAt);
+        return new HlsPlaylistCache.CachedPlaylist(rewrittenPlaylist.toString(), expiresAt);
+    }
+
+    public String getStreamingPlaylist(Long videoId, String userId) {
+        HlsPlaylistCache.StreamingPlaylist playlist = getAccessibleStreamingPlaylist(videoId, userId);
+        if ("Public".equals(playlist.visibility())) {
+            return playlist.content();
+        }
+        // Private segment links carry a short-lived token instead of anything identifying the owner
+        return playlist.content().replace(SEGMENT_TOKEN_PLACEHOLDER, segmentTokens.issue(videoId));
+    }
+
+    // Presigns a single segment on demand; the playlist served by getStreamingPlaylist points here
+    public String getSegmentUrl(Long videoId, int segmentIndex, Long expires, String token) {
+        HlsPlaylistCache.StreamingPlaylist playlist = hlsPlaylistCache.getStreaming(videoId, this::loadStreamingPlaylist);
+        if (!"Public".equals(playlist.visibility()) && !segmentTokens.verify(videoId, expires, token)) {
+            throw new SecurityException("Access denied: missing or expired segment token");
+        }
+        List<String> segmentKeys = playlist.segmentKeys();
+        if (segmentIndex < 0 || segmentIndex >= segmentKeys.size()) {
+            throw new IllegalArgumentException("Segment " + segmentIndex + " not found for video ID: " + videoId);
+        }
+        return generatePresignedDownloadUrl(segmentKeys.get(segmentIndex));
+    }
+
+    // Called after the owner edits title/description/visibility
+    public void onVideoEdited(Video video) {
+        hlsPlaylistCache.invalidateStreaming(video.getId());
+        feedIndexService.sync(video);
+    }
+
+    private HlsPlaylistCache.StreamingPlaylist getAccessibleStreamingPlaylist(Long videoId, String userId) {
+        HlsPlaylistCache.StreamingPlaylist playlist = hlsPlaylistCache.getStreaming(videoId, this::loadStreamingPlaylist);
+        if (!"Public".equals(playlist.visibility()) && !playlist.userId().equals(userId)) {
+            throw new SecurityException("Access denied: Video is private or not owned by the user");
+        }
+        return playlist;
+    }
+
+    private HlsPlaylistCache.StreamingPlaylist loadStreamingPlaylist(Long videoId) {
+        Video video = videoRepository.findByIdNative(videoId)
+                .orElseThrow(() -> new IllegalArgumentException("Video not found with ID: " + videoId));
+        String hlsPlaylistKey = video.getHlsPlaylistUrl();
+        if (hlsPlaylistKey == null || hlsPlaylistKey.isEmpty()) {
+            throw new IllegalArgumentException("HLS playlist not available for video ID: " + videoId);
+        }
+        // Segment requests can't carry headers; private links get a signed token when the playlist is served
+        String segmentQuery = "Public".equals(video.getVisibility()) ? "" : "?" + SEGMENT_TOKEN_PLACEHOLDER;
+        String basePath = hlsPlaylistKey.substring(0, hlsPlaylistKey.lastIndexOf('/') + 1);
+        StringBuilder playlist = new StringBuilder();
+        List<String> segmentKeys = new ArrayList<>();
+        for (String line : readHlsPlaylist(hlsPlaylistKey).split("\n")) {
+            if (line.endsWith(".ts")) {
+                playlist.append("segments/").append(segmentKeys.size()).append(segmentQuery).append("\n");
+                segmentKeys.add(basePath + line);
+            } else {
+                playlist.append(line).append("\n");
+            }
+        }
+        return new HlsPlaylistCache.StreamingPlaylist(video.getUserId(), video.getVisibility(),
+                playlist.toString(), List.copyOf(segmentKeys));
+    }
+
+    private String readHlsPlaylist(String hlsPlaylistKey) {
         try {
             GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                     .bucket(bucketName)
@@ -191,20 +355,7 @@ public class VideoService {
                     .build();
             try (ResponseInputStream<GetObjectResponse> response = s3Client.getObject(getObjectRequest);
                  BufferedReader reader = new BufferedReader(new InputStreamReader(response))) {
-                String playlistContent = reader.lines().collect(Collectors.joining("\n"));
-                String basePath = hlsPlaylistKey.substring(0, hlsPlaylistKey.lastIndexOf('/') + 1);
-                StringBuilder rewrittenPlaylist = new StringBuilder();
-                for (String line : playlistContent.split("\n")) {
-                    if (line.endsWith(".ts")) {
-                        String segmentKey = basePath + line;
-                        String presignedSegmentUrl = generatePresignedDownloadUrl(segmentKey);
-                        rewrittenPlaylist.append(presignedSegmentUrl).append("\n");
-                        System.out.println("Rewrote segment URL: " + line + " -> " + presignedSegmentUrl);
-                    } else {
-                        rewrittenPlaylist.append(line).append("\n");
-                    }
-                }
-                return rewrittenPlaylist.toString();
+                return reader.lines().collect(Collectors.joining("\n"));
             }
         } catch (NoSuchKeyException e) {
             System.out.println("HLS playlist not found: " + hlsPlaylistKey);
@@ -226,123 +377,94 @@ public class VideoService {
         return videoRepository.findByUserIdAndStatus(userId, size, offset);
     }
 
-    @Transactional
-    public void incrementViewCount(Long videoId) {
-        String bufferKey = "video:" + videoId + ":views:buffer";
-        String mainKey = "video:" + videoId + ":views";
-
-        Long viewCount = redisTemplateLong.opsForValue().get(mainKey);
-        if (viewCount == null) {
-            viewCount = videoRepository.findById(videoId)
-                    .map(Video::getViewCount)
-                    .orElse(0L);
-            redisTemplateLong.opsForValue().set(mainKey, viewCount);
-            System.out.println("Initialized Redis main view count for videoId=" + videoId + " to " + viewCount);
+    public List<Video> getMyVideos(String cursor, int size, String userId) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be a positive integer");
         }
-
-        Long bufferedViews = redisTemplateLong.opsForValue().increment(bufferKey);
-
-        Map<String, String> message = Map.of(
-                "video_id", videoId.toString(),
-                "view_count", String.valueOf(viewCount + bufferedViews)
-        );
-        redisPublisher.publish("view:count", message);
-
-        System.out.println("Buffered +1 view for videoId=" + videoId + " (buffer=" + bufferedViews + ", base=" + viewCount + ")");
+        KeysetCursor position = KeysetCursor.decode(cursor);
+        return videoRepository.findByUserIdAndStatusBefore(userId, position.time(), position.id(), size);
     }
 
-    @Scheduled(fixedRate = 30000)  // Evey 30 seconds
-    @Transactional
-    public void syncViewCountsToDatabase() {
-        System.out.println("Syncing view counts from Redis to DB...");
-
-        Set<String> keys = redisTemplateLong.keys("video:*:views:buffer");
-        if (keys == null) return;
-
-        for (String bufferKey : keys) {
-            try {
-                Long videoId = Long.parseLong(bufferKey.split(":")[1]);
-                Long bufferedViews = redisTemplateLong.opsForValue().get(bufferKey);
-
-                if (bufferedViews != null && bufferedViews > 0) {
-                    // Update DB
-                    videoRepository.incrementViewCountByDelta(videoId, bufferedViews);
-                    System.out.println("Synced videoId=" + videoId + " with +" + bufferedViews + " views");
-
-                    // Update main Redis key
-                    String mainKey = "video:" + videoId + ":views";
-                    Long currentMainCount = redisTemplateLong.opsForValue().get(mainKey) != null ? redisTemplateLong.opsForValue().get(mainKey) : 0L;
-                    redisTemplate.opsForValue().set(mainKey, currentMainCount + bufferedViews);
-
-                    // Reset buffer
-                    redisTemplate.delete(bufferKey);
-                }
-            } catch (Exception e) {
-                System.out.println("Failed to sync bufferKey=" + bufferKey + ": " + e.getMessage());
-            }
+    // Cursor for the page after this one, or null when the listing is exhausted
+    public static String nextCursor(List<Video> page, int size) {
+        if (page.size() < size) {
+            return null;
         }
+        Video last = page.get(page.size() - 1);
+        return new KeysetCursor(last.getUploadTime(), last.getId()).encode();
+    }
+
+    public void incrementViewCount(Long videoId) {
+        viewCountAggregator.increment(videoId);
     }
 
     public void deleteVideo(Long id, String userId) {
         Video video = videoRepository.findByIdAndUserId(id, userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Video not found"));
         videoRepository.delete(video);
+        hlsPlaylistCache.invalidate(video.getHlsPlaylistUrl());
+        hlsPlaylistCache.invalidateStreaming(id);
+        feedIndexService.remove(id);
+        likeEngine.evict(id);
+        recentCommentsCache.evict(id);
     }
 
-    @Transactional
     public Map<String, Object> toggleLike(Long videoId, String userId) {
-        Video video = videoRepository.findById(videoId)
-                .orElseThrow(() -> new RuntimeException("Video not found with ID: " + videoId));
-        VideoLike existingLike = videoLikeRepository.findByVideoIdAndUserId(videoId, userId).orElse(null);
+        LikeEngine.LikeState state = likeEngine.toggle(videoId, userId);
         Map<String, Object> response = new HashMap<>();
-        boolean success = true;
-        try {
-            if (existingLike != null) {
-                videoLikeRepository.delete(existingLike);
-                video.setLikeCount(video.getLikeCount() - 1);
-            } else {
-                VideoLike like = new VideoLike(videoId, userId);
-                videoLikeRepository.save(like);
-                video.setLikeCount(video.getLikeCount() + 1);
-
-                // Add user to VIP set
-                String vipKey = "video:" + videoId + ":vips";
-                Long added = stringRedisTemplate.opsForSet().add(vipKey, userId);
-
-                if (added != null && added == 1L) {
-                    System.out.println("User " + userId + " added to VIP set for video " + videoId);
-                } else {
-                    System.out.println("User " + userId + " was already a VIP for video " + videoId);
-                }
-            }
-            videoRepository.save(video);
-        } catch (DataIntegrityViolationException e) {
-            System.out.println("Duplicate like attempt for videoId " + videoId + " by user " + userId + ": " + e.getMessage());
-            success = false;
-        }
-        long updatedLikeCount = getLikeCount(videoId);
-        boolean isLiked = videoLikeRepository.findByVideoIdAndUserId(videoId, userId).isPresent();
-        response.put("isLiked", isLiked);
-        response.put("likeCount", updatedLikeCount);
-        response.put("success", success);
-        if (!success) {
-            response.put("error", "Duplicate like attempt detected, no change made");
-        }
-        redisPublisher.publish("like:count", Map.of(
-                "videoId", videoId.toString(),
-                "likeCount", String.valueOf(updatedLikeCount),
-                "isLiked", String.valueOf(isLiked)
-        ));
+        response.put("isLiked", state.liked());
+        response.put("likeCount", state.likeCount());
+        response.put("success", true);
+        redisPublisher.publishEvent("like:count:" + videoId, new LikeCountEvent(videoId, state.likeCount(), state.liked())).exceptionally(e -> {
+            System.out.println("Failed to publish like count for video " + videoId + ": " + e.getMessage());
+            return null;
+        });
         return response;
     }
 
     public boolean isLikedByUser(Long videoId, String userId) {
-        return videoLikeRepository.findByVideoIdAndUserId(videoId, userId).isPresent();
+        return likeEngine.isLiked(videoId, userId);
+    }
+
+    public Map<Long, LikeEngine.LikeState> getLikeStatuses(String userId, List<Long> videoIds) {
+        return likeEngine.bulkStatus(userId, videoIds);
+    }
+
+    public record VideoCounters(long viewCount, long likeCount) {
+    }
+
+    // Counters for a page of videos already loaded, from a single MGET over the Redis view main/buffer
+    // keys and like counters; rows fill in for counters Redis doesn't hold yet
+    public Map<Long, VideoCounters> getCounters(List<Video> videos) {
+        Map<Long, VideoCounters> counters = new HashMap<>();
+        if (videos.isEmpty()) {
+            return counters;
+        }
+        List<String> keys = new ArrayList<>(videos.size() * 3);
+        for (Video video : videos) {
+            keys.add(ViewCountFlusher.mainKey(video.getId()));
+            keys.add(ViewCountFlusher.bufferKey(video.getId()));
+            keys.add(LikeEngine.counterKey(video.getId()));
+        }
+        List<Long> values = redisTemplateLong.opsForValue().multiGet(keys);
+        for (int i = 0; i < videos.size(); i++) {
+            Video video = videos.get(i);
+            Long mainCount = values != null ? values.get(3 * i) : null;
+            Long bufferCount = values != null ? values.get(3 * i + 1) : null;
+            Long likeCount = values != null ? values.get(3 * i + 2) : null;
+            long viewCount = (mainCount != null ? mainCount : video.getViewCount())
+                    + (bufferCount != null ? bufferCount : 0L);
+            counters.put(video.getId(), new VideoCounters(viewCount, likeCount != null ? likeCount : video.getLikeCount()));
+        }
+        return counters;
+    }
+
+    // Same as above for callers that only hold ids: one IN query plus one MGET
+    public Map<Long, VideoCounters> getCountersByIds(List<Long> videoIds) {
+        return getCounters(videoRepository.findAllById(videoIds));
     }
 
     public long getLikeCount(Long videoId) {
-        return videoRepository.findById(videoId)
-                .map(Video::getLikeCount)
-                .orElse(0L); // Return 0 if video not found
+        return likeEngine.likeCount(videoId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,162 @@
+package io.muzoo.scalable.vms.r2;
+
+import io.muzoo.scalable.vms.Video;
+import io.muzoo.scalable.vms.VideoRepository;
+import io.muzoo.scalable.vms.redis.ViewCountBroadcaster;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts views in memory and pushes them to the Redis view buffers in one pipelined batch every
+// flush interval, so a view request costs a LongAdder increment instead of several Redis round trips.
+@Service
+public class ViewCountAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(ViewCountAggregator.class);
+    // Flush cycles a counter may stay at zero before its map entry is dropped
+    private static final int IDLE_FLUSHES_BEFORE_EVICTION = 240;
+
+    private static final class Counter {
+        final LongAdder views = new LongAdder();
+        int idleFlushes; // only touched by the flushing thread
+    }
+
+    private final ConcurrentHashMap<Long, Counter> counters = new ConcurrentHashMap<>(1024);
+    // Counters evicted on the previous cycle; drained once more in case an increment raced the eviction
+    private Map<Long, Counter> retired = new HashMap<>();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final VideoRepository videoRepository;
+    private final ViewCountBroadcaster viewCountBroadcaster;
+
+    public ViewCountAggregator(StringRedisTemplate stringRedisTemplate,
+                               VideoRepository videoRepository,
+                               ViewCountBroadcaster viewCountBroadcaster) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.videoRepository = videoRepository;
+        this.viewCountBroadcaster = viewCountBroadcaster;
+    }
+
+    public void increment(Long videoId) {
+        counters.computeIfAbsent(videoId, id -> new Counter()).views.increment();
+    }
+
+    @Scheduled(fixedDelayString = "${vms.views.aggregator.flush-interval-ms:250}")
+    public synchronized void flush() {
+        Map<Long, Long> deltas = new LinkedHashMap<>();
+        retired.forEach((videoId, counter) -> {
+            long late = counter.views.sumThenReset();
+            if (late > 0) {
+                deltas.merge(videoId, late, Long::sum);
+            }
+        });
+        retired = new HashMap<>();
+
+        for (Map.Entry<Long, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            long views = counter.views.sumThenReset();
+            if (views > 0) {
+                counter.idleFlushes = 0;
+                deltas.merge(entry.getKey(), views, Long::sum);
+            } else if (++counter.idleFlushes >= IDLE_FLUSHES_BEFORE_EVICTION && counters.remove(entry.getKey(), counter)) {
+                retired.put(entry.getKey(), counter);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<Long> videoIds = new ArrayList<>(deltas.keySet());
+        List<Object> results;
+        try {
+            results = pushToRedis(videoIds, deltas);
+        } catch (Exception e) {
+            // The pipeline did not go through, so the deltas are not in Redis yet
+            logger.error("Failed to flush {} view deltas to Redis, keeping them for the next cycle: {}",
+                    deltas.size(), e.getMessage());
+            deltas.forEach((videoId, views) -> counters.computeIfAbsent(videoId, id -> new Counter()).views.add(views));
+            return;
+        }
+        // From here on the views are buffered in Redis and must not be re-added; seeding or broadcast
+        // failures only cost this cycle's live update
+        broadcast(videoIds, results);
+    }
+
+    @PreDestroy
+    public void drainOnShutdown() {
+        logger.info("Draining {} in-memory view counters before shutdown", counters.size());
+        flush();
+        flush(); // second pass picks up counters retired by the first
+    }
+
+    // Per video: INCRBY buffer, SADD dirty, GET main
+    private List<Object> pushToRedis(List<Long> videoIds, Map<Long, Long> deltas) {
+        return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            for (Long videoId : videoIds) {
+                redis.incrBy(ViewCountFlusher.bufferKey(videoId), deltas.get(videoId));
+                redis.sAdd(ViewCountFlusher.DIRTY_KEY, videoId.toString());
+                redis.get(ViewCountFlusher.mainKey(videoId));
+            }
+            return null;
+        });
+    }
+
+    private void broadcast(List<Long> videoIds, List<Object> results) {
+        Map<Long, Long> buffered = new HashMap<>();
+        Map<Long, Long> base = new HashMap<>();
+        List<Long> uninitialized = new ArrayList<>();
+        for (int i = 0; i < videoIds.size(); i++) {
+            Long videoId = videoIds.get(i);
+            buffered.put(videoId, ((Number) results.get(3 * i)).longValue());
+            Object mainCount = results.get(3 * i + 2);
+            if (mainCount == null) {
+                uninitialized.add(videoId);
+            } else {
+                base.put(videoId, Long.parseLong(mainCount.toString()));
+            }
+        }
+        if (!uninitialized.isEmpty()) {
+            try {
+                initializeMainCounts(uninitialized, base);
+            } catch (Exception e) {
+                // Without a base the total would be wrong; the next read or flush seeds these
+                logger.warn("Failed to seed view counts for {} videos: {}", uninitialized.size(), e.getMessage());
+            }
+        }
+
+        for (Long videoId : videoIds) {
+            Long baseCount = base.get(videoId);
+            if (baseCount == null) {
+                continue;
+            }
+            try {
+                viewCountBroadcaster.offer(videoId, baseCount + buffered.get(videoId));
+            } catch (Exception e) {
+                logger.warn("Failed to broadcast view count for video {}: {}", videoId, e.getMessage());
+            }
+        }
+    }
+
+    // Seeds missing main keys from the DB in one query; SETNX keeps a concurrently set value
+    private void initializeMainCounts(List<Long> videoIds, Map<Long, Long> base) {
+        Map<Long, Long> dbCounts = new HashMap<>();
+        for (Video video : videoRepository.findAllById(videoIds)) {
+            dbCounts.put(video.getId(), video.getViewCount());
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) (RedisConnection connection) -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            dbCounts.forEach((videoId, count) -> redis.setNX(ViewCountFlusher.mainKey(videoId), count.toString()));
+            return null;
+        });
+        base.putAll(dbCounts);
+    }
+}
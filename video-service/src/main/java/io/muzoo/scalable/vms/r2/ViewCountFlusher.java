@@ -0,0 +1,107 @@
+package io.muzoo.scalable.vms.r2;
+
+import io.muzoo.scalable.vms.redis.RedisScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Moves buffered views from Redis into vms_video_data. Videos with pending views are tracked in a
+// dirty set; each buffer is drained atomically by a Lua script (GETDEL + INCRBY main key), so views
+// landing mid-flush stay in the buffer for the next cycle instead of being deleted.
+@Service
+public class ViewCountFlusher {
+    private static final Logger logger = LoggerFactory.getLogger(ViewCountFlusher.class);
+    public static final String DIRTY_KEY = "video:views:dirty";
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> DRAIN_SCRIPT = RedisScripts.load("drain_view_buffers.lua", List.class);
+    private static final DefaultRedisScript<Long> RESTORE_SCRIPT = RedisScripts.load("restore_view_buffers.lua", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public ViewCountFlusher(StringRedisTemplate stringRedisTemplate,
+                            JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${vms.views.flush.batch-size:500}") int batchSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+    }
+
+    public static String mainKey(Long videoId) {
+        return "video:" + videoId + ":views";
+    }
+
+    public static String bufferKey(Long videoId) {
+        return "video:" + videoId + ":views:buffer";
+    }
+
+    @Scheduled(fixedRate = 30000)  // Evey 30 seconds
+    public void syncViewCountsToDatabase() {
+        List<String> drained = new ArrayList<>();
+        try {
+            while (true) {
+                @SuppressWarnings("unchecked")
+                List<String> batch = stringRedisTemplate.execute(DRAIN_SCRIPT, List.of(DIRTY_KEY), String.valueOf(batchSize));
+                if (batch == null || batch.isEmpty()) {
+                    break;
+                }
+                drained.addAll(batch.subList(1, batch.size()));
+                // Buffers can be empty, so only a short SPOP (not a short delta list) means the set is dry
+                if (Long.parseLong(batch.get(0)) < batchSize) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Failed to drain view buffers: {}", e.getMessage(), e);
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> updates = new ArrayList<>(drained.size() / 2);
+        for (int i = 0; i < drained.size(); i += 2) {
+            updates.add(new Object[]{Long.parseLong(drained.get(i + 1)), Long.parseLong(drained.get(i))});
+        }
+        // One transaction, so a failed write leaves nothing applied and restoring every delta is exact
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate("UPDATE vms_video_data SET view_count = view_count + ? WHERE id = ?", updates));
+            logger.info("Synced buffered views for {} videos", updates.size());
+        } catch (Exception e) {
+            logger.error("Failed to write {} view deltas to DB, returning them to Redis: {}", updates.size(), e.getMessage(), e);
+            stringRedisTemplate.execute(RESTORE_SCRIPT, List.of(DIRTY_KEY), drained.toArray());
+        }
+    }
+
+    // One-off SCAN so buffers written before the dirty set existed are still flushed
+    @EventListener(ApplicationReadyEvent.class)
+    public void markExistingBuffersDirty() {
+        ScanOptions options = ScanOptions.scanOptions().match("video:*:views:buffer").count(1000).build();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String bufferKey = cursor.next();
+                stringRedisTemplate.opsForSet().add(DIRTY_KEY, bufferKey.split(":")[1]);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to scan for existing view buffers: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package io.muzoo.scalable.vms.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Runs one pub/sub listener on its own bounded queue and a fixed number of virtual threads instead
+// of the container's thread-per-message default. What happens when the queue is full is decided per
+// channel: BLOCK holds the container's dispatch thread (never the Redis I/O thread, see RedisConfig)
+// for up to block-timeout before anything is dropped. COALESCE is for counters published on
+// per-entity channels: only the latest message per Redis channel is kept and at most one task per
+// channel is queued, so a burst on one video can neither evict another video's update nor leave a
+// stale value behind. Its queue needs no bound, since it never holds more tasks than this node has
+// subscribed channels. web-socket has the same class; keep the two identical apart from the
+// package and metric prefix.
+public class BoundedMessageListener implements MessageListener {
+    private static final Logger logger = LoggerFactory.getLogger(BoundedMessageListener.class);
+
+    public enum OverflowPolicy {
+        DROP_OLDEST, DROP_NEWEST, BLOCK, COALESCE
+    }
+
+    public record Settings(int concurrency, int queueCapacity, OverflowPolicy overflow, Duration blockTimeout) {
+    }
+
+    private final String channel;
+    private final MessageListener delegate;
+    private final ThreadPoolExecutor executor;
+    private final Timer processing;
+    private final Counter dropped;
+    private final Counter coalesced;
+    // COALESCE only: latest undelivered message per Redis channel
+    private final ConcurrentHashMap<String, Pending> latest = new ConcurrentHashMap<>();
+    private final boolean coalesce;
+
+    private record Pending(Message message, byte[] pattern) {
+    }
+
+    public BoundedMessageListener(String channel, MessageListener delegate, Settings settings, MeterRegistry meterRegistry) {
+        this.channel = channel;
+        this.delegate = delegate;
+        this.processing = meterRegistry.timer("vms.redis.listener.processing", "channel", channel);
+        this.dropped = meterRegistry.counter("vms.redis.listener.dropped", "channel", channel);
+        this.coalesced = meterRegistry.counter("vms.redis.listener.coalesced", "channel", channel);
+        this.coalesce = settings.overflow() == OverflowPolicy.COALESCE;
+        BlockingQueue<Runnable> queue = coalesce
+                ? new LinkedBlockingQueue<>()
+                : new ArrayBlockingQueue<>(settings.queueCapacity());
+        this.executor = new ThreadPoolExecutor(settings.concurrency(), settings.concurrency(), 0L, TimeUnit.MILLISECONDS,
+                queue, Thread.ofVirtual().name("redis-" + channel + "-", 0).factory(), overflowHandler(settings));
+        meterRegistry.gaugeCollectionSize("vms.redis.listener.queue.depth", Tags.of("channel", channel), queue);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (!coalesce) {
+            executor.execute(() -> deliver(message, pattern));
+            return;
+        }
+        String key = new String(message.getChannel(), StandardCharsets.UTF_8);
+        if (latest.put(key, new Pending(message, pattern)) != null) {
+            coalesced.increment(); // replaced an update still waiting; its task delivers this one
+            return;
+        }
+        executor.execute(() -> {
+            Pending pending = latest.remove(key);
+            if (pending != null) {
+                deliver(pending.message(), pending.pattern());
+            }
+        });
+    }
+
+    private void deliver(Message message, byte[] pattern) {
+        processing.record(() -> {
+            try {
+                delegate.onMessage(message, pattern);
+            } catch (Exception e) {
+                logger.error("Error handling {} message: {}", channel, e.getMessage(), e);
+            }
+        });
+    }
+
+    private RejectedExecutionHandler overflowHandler(Settings settings) {
+        return switch (settings.overflow()) {
+            case DROP_OLDEST -> (task, pool) -> {
+                if (pool.isShutdown()) {
+                    return;
+                }
+                pool.getQueue().poll();
+                dropped.increment();
+                pool.execute(task);
+            };
+            // COALESCE only rejects during shutdown
+            case DROP_NEWEST, COALESCE -> (task, pool) -> dropped.increment();
+            case BLOCK -> (task, pool) -> {
+                try {
+                    if (pool.isShutdown()
+                            || !pool.getQueue().offer(task, settings.blockTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                        dropped.increment();
+                        logger.warn("Dropped {} message after waiting {} for queue space", channel, settings.blockTimeout());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                }
+            };
+        };
+    }
+
+    // The listener container's dispatch thread: one thread keeps arrival order, and a BLOCK wait parks
+    // it instead of the Redis connection's event loop. If its own queue fills up, messages are dropped
+    // (and counted) rather than stalling the connection.
+    public static ThreadPoolTaskExecutor dispatchExecutor(int queueCapacity, Counter dropped) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("redis-dispatch-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler((task, pool) -> dropped.increment());
+        executor.initialize();
+        return executor;
+    }
+
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            logger.warn("{} listener still had {} queued messages at shutdown", channel, executor.getQueue().size());
+            executor.shutdownNow();
+        }
+    }
+}
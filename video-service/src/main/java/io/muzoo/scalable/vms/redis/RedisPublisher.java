@@ -1,21 +1,142 @@
 package io.muzoo.scalable.vms.redis;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.muzoo.scalable.vms.events.EventCodec;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Publishes versioned events (see EventCodec). With batching enabled, publishEvent() encodes on the
+// caller, queues the message and returns at once; a single flusher thread drains the queue in FIFO
+// order and sends it as one pipeline every flush-interval, or as soon as batch-size messages wait.
+// One drainer keeps per-channel order. The returned future completes when the pipeline that carried
+// the message has been executed.
 @Service
-@RequiredArgsConstructor
 public class RedisPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(RedisPublisher.class);
+
+    private record PendingMessage(byte[] channel, byte[] body, CompletableFuture<Void> sent) {
+    }
+
     private final RedisTemplate<String, Object> redisTemplate;
-    private final StringRedisTemplate stringRedisTemplate;
+    private final EventCodec eventCodec;
+    private final boolean batching;
+    private final int batchSize;
+    private final int maxPending;
+    private final ConcurrentLinkedQueue<PendingMessage> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ScheduledExecutorService flusher;
+    private final DistributionSummary batchSizes;
+    private final Counter rejected;
+
+    public RedisPublisher(RedisTemplate<String, Object> redisTemplate,
+                          EventCodec eventCodec,
+                          MeterRegistry meterRegistry,
+                          @Value("${vms.redis.publisher.batching.enabled:false}") boolean batching,
+                          @Value("${vms.redis.publisher.batching.flush-interval:2ms}") Duration flushInterval,
+                          @Value("${vms.redis.publisher.batching.batch-size:256}") int batchSize,
+                          @Value("${vms.redis.publisher.batching.max-pending:100000}") int maxPending) {
+        this.redisTemplate = redisTemplate;
+        this.eventCodec = eventCodec;
+        this.batching = batching;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.batchSizes = meterRegistry.summary("vms.redis.publisher.batch.size");
+        this.rejected = meterRegistry.counter("vms.redis.publisher.rejected");
+        meterRegistry.gauge("vms.redis.publisher.pending", queued);
+        if (batching) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("redis-publisher-"));
+            long intervalMicros = Math.max(1, flushInterval.toNanos() / 1_000);
+            flusher.scheduleWithFixedDelay(this::flush, intervalMicros, intervalMicros, TimeUnit.MICROSECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    // Event encoded by EventCodec (Smile or JSON), for channels only read by our Java services
+    public CompletableFuture<Void> publishEvent(String channel, Object event) {
+        byte[] body = eventCodec.encode(event);
+        if (!batching) {
+            redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.publish(channel.getBytes(StandardCharsets.UTF_8), body));
+            return CompletableFuture.completedFuture(null);
+        }
+        return enqueue(channel, body);
+    }
+
+    private CompletableFuture<Void> enqueue(String channel, byte[] body) {
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        int size = queued.incrementAndGet();
+        if (size > maxPending) {
+            // Redis is not keeping up (or is down); fail fast instead of growing without bound
+            queued.decrementAndGet();
+            rejected.increment();
+            sent.completeExceptionally(new RejectedExecutionException("Redis publish queue is full"));
+            return sent;
+        }
+        queue.add(new PendingMessage(channel.getBytes(StandardCharsets.UTF_8), body, sent));
+        if (size == batchSize) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the final flush in shutdown() sends it
+            }
+        }
+        return sent;
+    }
 
-    public void publish(String channel, Object message) {
-        redisTemplate.convertAndSend(channel, message);
+    // Only ever runs on the flusher thread
+    private void flush() {
+        while (true) {
+            List<PendingMessage> batch = new ArrayList<>(Math.min(queued.get(), batchSize));
+            PendingMessage message;
+            while (batch.size() < batchSize && (message = queue.poll()) != null) {
+                batch.add(message);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            queued.addAndGet(-batch.size());
+            try {
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (PendingMessage pending : batch) {
+                        connection.publish(pending.channel(), pending.body());
+                    }
+                    return null;
+                });
+                batchSizes.record(batch.size());
+                batch.forEach(pending -> pending.sent().complete(null));
+            } catch (Exception e) {
+                logger.error("Failed to publish batch of {} messages: {}", batch.size(), e.getMessage());
+                batch.forEach(pending -> pending.sent().completeExceptionally(e));
+            }
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
     }
 
-    public void publishString(String channel, String message) {
-        stringRedisTemplate.convertAndSend(channel, message);
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flush(); // whatever was queued after the last scheduled run
     }
 }
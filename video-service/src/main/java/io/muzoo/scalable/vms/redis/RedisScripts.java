@@ -0,0 +1,18 @@
+package io.muzoo.scalable.vms.redis;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+// Lua scripts live under src/main/resources/redis/
+public final class RedisScripts {
+
+    private RedisScripts() {
+    }
+
+    public static <T> DefaultRedisScript<T> load(String name, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource("redis/" + name));
+        script.setResultType(resultType);
+        return script;
+    }
+}
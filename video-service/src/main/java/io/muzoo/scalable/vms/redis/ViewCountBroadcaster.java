@@ -0,0 +1,58 @@
+package io.muzoo.scalable.vms.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.muzoo.scalable.vms.events.ViewCountEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Coalesces view:count:{videoId} updates per video (latest/highest value wins) and publishes at most once per
+// tick, so a viral video produces a bounded message rate instead of one message per view. web-socket
+// has the same buffer in front of STOMP (the modules share no artifact); keep the two in step.
+@Service
+public class ViewCountBroadcaster {
+    private final RedisPublisher redisPublisher;
+    private final ConcurrentHashMap<Long, Long> pending = new ConcurrentHashMap<>();
+    private final Counter mergedUpdates;
+    private final Counter droppedUpdates;
+    private final Counter publishedUpdates;
+
+    public ViewCountBroadcaster(RedisPublisher redisPublisher, MeterRegistry meterRegistry,
+                                @Value("${vms.views.broadcast.interval-ms:250}") long intervalMs) {
+        if (intervalMs < 1) {
+            throw new IllegalArgumentException("vms.views.broadcast.interval-ms must be at least 1, got " + intervalMs);
+        }
+        this.redisPublisher = redisPublisher;
+        this.mergedUpdates = meterRegistry.counter("vms.views.broadcast.updates", "outcome", "merged");
+        this.droppedUpdates = meterRegistry.counter("vms.views.broadcast.updates", "outcome", "dropped");
+        this.publishedUpdates = meterRegistry.counter("vms.views.broadcast.updates", "outcome", "published");
+        meterRegistry.gaugeMapSize("vms.views.broadcast.pending", List.of(), pending);
+    }
+
+    public void offer(Long videoId, long viewCount) {
+        pending.merge(videoId, viewCount, (current, incoming) -> {
+            if (incoming >= current) {
+                mergedUpdates.increment();
+                return incoming;
+            }
+            droppedUpdates.increment(); // stale value arriving after a newer one
+            return current;
+        });
+    }
+
+    @Scheduled(fixedRateString = "${vms.views.broadcast.interval-ms:250}")
+    public void publishPending() {
+        for (Long videoId : pending.keySet()) {
+            Long viewCount = pending.remove(videoId);
+            if (viewCount == null) {
+                continue;
+            }
+            redisPublisher.publishEvent("view:count:" + videoId, new ViewCountEvent(videoId, viewCount));
+            publishedUpdates.increment();
+        }
+    }
+}
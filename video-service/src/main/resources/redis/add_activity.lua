@@ -0,0 +1,10 @@
+-- Appends one notification to a video's activity stream and records its id as the video's latest
+-- activity in the same step, so the recorded id never lags the stream.
+-- KEYS[1]: stream, KEYS[2]: hash video id -> latest stream id
+-- ARGV[1]: video id, ARGV[2]: approximate max length, ARGV[3]: retention seconds, ARGV[4]: actors,
+-- ARGV[5]: shared payload
+local id = redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[2], '*', 'actors', ARGV[4], 'payload', ARGV[5])
+redis.call('HSET', KEYS[2], ARGV[1], id)
+-- streams of videos that go quiet expire, and prune_activity_videos.lua then drops them from the hash
+redis.call('EXPIRE', KEYS[1], ARGV[3])
+return 1
@@ -0,0 +1,31 @@
+-- Stores notifications pulled from activity streams in a user's inbox and advances the per-video
+-- read positions, unless another reader already advanced any of them (then nothing is written).
+-- KEYS[1]: id sequence, KEYS[2]: inbox ids ZSET, KEYS[3]: payload HASH, KEYS[4]: unread ZSET,
+-- KEYS[5]: hash video id -> last pulled stream id
+-- ARGV[1]: inbox cap, ARGV[2]: number of videos n, then n triples (video id, expected last id or '',
+-- new last id), then the notification payloads (JSON objects without an id), oldest first
+local videos = tonumber(ARGV[2])
+for i = 0, videos - 1 do
+    local current = redis.call('HGET', KEYS[5], ARGV[3 + i * 3]) or ''
+    if current ~= ARGV[4 + i * 3] then
+        return 0
+    end
+end
+for i = 0, videos - 1 do
+    redis.call('HSET', KEYS[5], ARGV[3 + i * 3], ARGV[5 + i * 3])
+end
+local first = 3 + videos * 3
+for i = first, #ARGV do
+    local id = redis.call('INCR', KEYS[1])
+    redis.call('ZADD', KEYS[2], id, id)
+    redis.call('HSET', KEYS[3], id, '{"id":' .. id .. ',' .. string.sub(ARGV[i], 2))
+    redis.call('ZADD', KEYS[4], id, id)
+end
+local excess = redis.call('ZCARD', KEYS[2]) - tonumber(ARGV[1])
+if excess > 0 then
+    local dropped = redis.call('ZRANGE', KEYS[2], 0, excess - 1)
+    redis.call('ZREM', KEYS[2], unpack(dropped))
+    redis.call('HDEL', KEYS[3], unpack(dropped))
+    redis.call('ZREM', KEYS[4], unpack(dropped))
+end
+return #ARGV - first + 1
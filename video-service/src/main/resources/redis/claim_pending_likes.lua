@@ -0,0 +1,12 @@
+-- Moves up to ARGV[1] like changes from the pending list to the processing list in one step. They stay
+-- there until the DB commit is acked, so a crash in between leaves them to be replayed, not lost.
+-- KEYS[1]: pending list; KEYS[2]: processing list
+local claimed = {}
+for _ = 1, tonumber(ARGV[1]) do
+    local entry = redis.call('LMOVE', KEYS[1], KEYS[2], 'LEFT', 'RIGHT')
+    if not entry then
+        break
+    end
+    table.insert(claimed, entry)
+end
+return claimed
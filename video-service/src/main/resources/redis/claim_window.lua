@@ -0,0 +1,21 @@
+-- Takes a closed notification window for delivery; only one caller can win a given window. The
+-- state is moved to claim-specific keys (comments arriving meanwhile open a fresh window) and kept
+-- there, with a lease in the processing ZSET, until the caller acks delivery by deleting it.
+-- KEYS[1]: due ZSET, KEYS[2]: window HASH, KEYS[3]: window actors ZSET, KEYS[4]: processing ZSET,
+-- KEYS[5]: claimed HASH, KEYS[6]: claimed actors ZSET
+-- ARGV[1]: window id, ARGV[2]: claim id (processing member), ARGV[3]: lease deadline (ms)
+-- Returns {count, title, actors (most recent first)} or nil when already claimed
+if redis.call('ZREM', KEYS[1], ARGV[1]) == 0 then
+    return false
+end
+if redis.call('EXISTS', KEYS[2]) == 1 then
+    redis.call('RENAME', KEYS[2], KEYS[5])
+end
+if redis.call('EXISTS', KEYS[3]) == 1 then
+    redis.call('RENAME', KEYS[3], KEYS[6])
+end
+redis.call('ZADD', KEYS[4], ARGV[3], ARGV[2])
+local count = redis.call('HGET', KEYS[5], 'count') or '0'
+local title = redis.call('HGET', KEYS[5], 'title') or ''
+local actors = redis.call('ZREVRANGE', KEYS[6], 0, -1)
+return {count, title, actors}
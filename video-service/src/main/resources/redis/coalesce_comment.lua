@@ -0,0 +1,11 @@
+-- Adds a comment to the notification window of its video, opening the window if none is pending.
+-- KEYS[1]: window HASH (count, title), KEYS[2]: window actors ZSET (score = last comment time),
+-- KEYS[3]: due ZSET of pending windows (score = when the window closes)
+-- ARGV[1]: window id in the due ZSET, ARGV[2]: now (ms), ARGV[3]: window length (ms), ARGV[4]: actor,
+-- ARGV[5]: video title
+redis.call('HINCRBY', KEYS[1], 'count', 1)
+redis.call('HSET', KEYS[1], 'title', ARGV[5])
+redis.call('ZADD', KEYS[2], ARGV[2], ARGV[4])
+-- NX: later comments must not push the deadline back
+redis.call('ZADD', KEYS[3], 'NX', tonumber(ARGV[2]) + tonumber(ARGV[3]), ARGV[1])
+return 1
@@ -0,0 +1,26 @@
+-- Delivers a different notification to each of a few users in one call, e.g. the personalised
+-- variants of a fanned-out notification. Same storage steps as fanout_notifications.lua.
+-- KEYS[1]: id sequence; per user i, KEYS[3i - 1], KEYS[3i], KEYS[3i + 1]: inbox ids ZSET, payload
+-- HASH, unread ZSET of that user
+-- ARGV[1]: inbox cap; per user i, ARGV[2i]: user id, ARGV[2i + 1]: JSON fields without the leading '{'
+local cap = tonumber(ARGV[1])
+local users = (#ARGV - 1) / 2
+local id = redis.call('INCRBY', KEYS[1], users) - users
+for i = 1, users do
+    id = id + 1
+    local userId = ARGV[2 * i]
+    local ids, data, unread = KEYS[3 * i - 1], KEYS[3 * i], KEYS[3 * i + 1]
+    local payload = '{"id":' .. id .. ',"userId":' .. cjson.encode(userId) .. ',' .. ARGV[2 * i + 1]
+    redis.call('ZADD', ids, id, id)
+    redis.call('HSET', data, id, payload)
+    redis.call('ZADD', unread, id, id)
+    local excess = redis.call('ZCARD', ids) - cap
+    if excess > 0 then
+        local dropped = redis.call('ZRANGE', ids, 0, excess - 1)
+        redis.call('ZREM', ids, unpack(dropped))
+        redis.call('HDEL', data, unpack(dropped))
+        redis.call('ZREM', unread, unpack(dropped))
+    end
+    redis.call('PUBLISH', 'notification:user:' .. userId, payload)
+end
+return users
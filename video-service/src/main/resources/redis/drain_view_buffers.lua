@@ -0,0 +1,19 @@
+-- Drains up to ARGV[1] dirty view buffers in one atomic step.
+-- KEYS[1]: set of video ids with pending buffered views
+-- Returns {poppedIds, videoId, delta, videoId, delta, ...}; poppedIds counts every id taken from the
+-- dirty set, including ones whose buffer held no delta, so callers can tell whether the set ran dry
+local ids = redis.call('SPOP', KEYS[1], ARGV[1])
+local drained = {tostring(#ids)}
+for _, id in ipairs(ids) do
+    local delta = redis.call('GETDEL', 'video:' .. id .. ':views:buffer')
+    if delta and tonumber(delta) > 0 then
+        local mainKey = 'video:' .. id .. ':views'
+        -- a missing main key is re-initialised from the DB on next use, which will include this delta
+        if redis.call('EXISTS', mainKey) == 1 then
+            redis.call('INCRBY', mainKey, delta)
+        end
+        table.insert(drained, id)
+        table.insert(drained, delta)
+    end
+end
+return drained
@@ -0,0 +1,27 @@
+-- Delivers one notification to a chunk of users: stores it in each inbox under a fresh id, marks it
+-- unread, trims the inbox to its cap, then PUBLISHes it.
+-- KEYS[1]: id sequence; per user i, KEYS[3i - 1], KEYS[3i], KEYS[3i + 1]: inbox ids ZSET, payload
+-- HASH, unread ZSET of ARGV[i + 2]
+-- ARGV[1]: shared JSON fields without the leading '{', ARGV[2]: inbox cap, ARGV[3..]: user ids
+local shared = ARGV[1]
+local cap = tonumber(ARGV[2])
+local users = #ARGV - 2
+local id = redis.call('INCRBY', KEYS[1], users) - users
+for i = 1, users do
+    id = id + 1
+    local userId = ARGV[i + 2]
+    local ids, data, unread = KEYS[3 * i - 1], KEYS[3 * i], KEYS[3 * i + 1]
+    local payload = '{"id":' .. id .. ',"userId":' .. cjson.encode(userId) .. ',' .. shared
+    redis.call('ZADD', ids, id, id)
+    redis.call('HSET', data, id, payload)
+    redis.call('ZADD', unread, id, id)
+    local excess = redis.call('ZCARD', ids) - cap
+    if excess > 0 then
+        local dropped = redis.call('ZRANGE', ids, 0, excess - 1)
+        redis.call('ZREM', ids, unpack(dropped))
+        redis.call('HDEL', data, unpack(dropped))
+        redis.call('ZREM', unread, unpack(dropped))
+    end
+    redis.call('PUBLISH', 'notification:user:' .. userId, payload)
+end
+return users
@@ -0,0 +1,30 @@
+-- Moves a user's notifications from the old LPUSH list into the id-addressed inbox, oldest first,
+-- keeping each entry's read flag. Entries that are not valid JSON objects are dropped.
+-- KEYS[1]: legacy list, KEYS[2]: id sequence, KEYS[3]: inbox ids ZSET, KEYS[4]: payload HASH,
+-- KEYS[5]: unread ZSET; ARGV[1]: inbox cap
+local legacy = redis.call('LRANGE', KEYS[1], 0, -1)
+local imported = 0
+for i = #legacy, 1, -1 do
+    local ok, notification = pcall(cjson.decode, legacy[i])
+    if ok and type(notification) == 'table' then
+        local id = redis.call('INCR', KEYS[2])
+        local read = notification['read'] == true or notification['read'] == 'true'
+        notification['id'] = id
+        notification['read'] = false
+        redis.call('ZADD', KEYS[3], id, id)
+        redis.call('HSET', KEYS[4], id, cjson.encode(notification))
+        if not read then
+            redis.call('ZADD', KEYS[5], id, id)
+        end
+        imported = imported + 1
+    end
+end
+redis.call('DEL', KEYS[1])
+local excess = redis.call('ZCARD', KEYS[3]) - tonumber(ARGV[1])
+if excess > 0 then
+    local dropped = redis.call('ZRANGE', KEYS[3], 0, excess - 1)
+    redis.call('ZREM', KEYS[3], unpack(dropped))
+    redis.call('HDEL', KEYS[4], unpack(dropped))
+    redis.call('ZREM', KEYS[5], unpack(dropped))
+end
+return imported
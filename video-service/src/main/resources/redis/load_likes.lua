@@ -0,0 +1,29 @@
+-- Loads a video's likers from the DB snapshot unless another caller already did. The snapshot lags
+-- Redis by the changes still queued for the write-behind, so those are replayed on top of it (oldest
+-- first: the batch being persisted, then the pending list) and the counter is taken from the result.
+-- KEYS[1]: likers set, KEYS[2]: like counter, KEYS[3]: write-behind processing list,
+-- KEYS[4]: write-behind pending list
+-- ARGV[1]: video id, ARGV[2]: TTL in seconds, ARGV[3..]: user ids from the DB
+if redis.call('EXISTS', KEYS[2]) == 1 then
+    return 0
+end
+redis.call('DEL', KEYS[1])
+for i = 3, #ARGV do
+    redis.call('SADD', KEYS[1], ARGV[i])
+end
+for k = 3, 4 do
+    for _, entry in ipairs(redis.call('LRANGE', KEYS[k], 0, -1)) do
+        -- entry format: <videoId>:<1|0>:<userId>
+        local videoId, liked, userId = string.match(entry, '^(%d+):([01]):(.*)$')
+        if videoId == ARGV[1] then
+            if liked == '1' then
+                redis.call('SADD', KEYS[1], userId)
+            else
+                redis.call('SREM', KEYS[1], userId)
+            end
+        end
+    end
+end
+redis.call('SET', KEYS[2], redis.call('SCARD', KEYS[1]), 'EX', ARGV[2])
+redis.call('EXPIRE', KEYS[1], ARGV[2])
+return 1
@@ -0,0 +1,23 @@
+-- Fills a user's liked-videos bitmap unless it is already loaded. The DB snapshot lags Redis by the
+-- changes still queued for the write-behind, so those are replayed on top of it (oldest first:
+-- the batch being persisted, then the pending list) before the bitmap is marked loaded.
+-- KEYS[1]: bitmap, KEYS[2]: write-behind processing list, KEYS[3]: write-behind pending list
+-- ARGV[1]: user id; ARGV[2..]: liked video ids from the DB. Bit 0 marks the bitmap as loaded
+-- (video ids start at 1).
+if redis.call('GETBIT', KEYS[1], 0) == 1 then
+    return 0
+end
+for i = 2, #ARGV do
+    redis.call('SETBIT', KEYS[1], ARGV[i], 1)
+end
+for k = 2, 3 do
+    for _, entry in ipairs(redis.call('LRANGE', KEYS[k], 0, -1)) do
+        -- entry format: <videoId>:<1|0>:<userId>
+        local videoId, liked, userId = string.match(entry, '^(%d+):([01]):(.*)$')
+        if userId == ARGV[1] then
+            redis.call('SETBIT', KEYS[1], videoId, tonumber(liked))
+        end
+    end
+end
+redis.call('SETBIT', KEYS[1], 0, 1)
+return 1
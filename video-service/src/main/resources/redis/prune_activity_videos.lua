@@ -0,0 +1,10 @@
+-- Forgets videos whose activity stream has expired (or was deleted). Checked per id inside the
+-- script so an append racing the prune cannot be forgotten.
+-- KEYS[1]: hash video id -> latest stream id; ARGV: video ids
+local pruned = 0
+for i = 1, #ARGV do
+    if redis.call('EXISTS', 'video:' .. ARGV[i] .. ':activity') == 0 then
+        pruned = pruned + redis.call('HDEL', KEYS[1], ARGV[i])
+    end
+end
+return pruned
@@ -0,0 +1,13 @@
+-- Adds one comment to a video's recent-comments ZSET. Every member has score 0 and starts with a
+-- fixed-width (created_at, id) sort key, so the set keeps DB order whatever order pushes arrive in,
+-- and a comment the warm-up already added is not added twice. A missing key is created rather than
+-- skipped, so a comment committed while a warm-up reads the DB cannot fall between the two.
+-- KEYS[1]: zset; ARGV[1]: member, ARGV[2]: capacity, ARGV[3]: ttl seconds
+redis.call('ZADD', KEYS[1], 0, ARGV[1])
+-- newest `capacity` comments plus the completeness marker, which sorts above all of them
+redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[2]) + 2))
+-- the TTL is set when the key is created and never extended, which bounds how stale it can get
+if redis.call('TTL', KEYS[1]) == -1 then
+    redis.call('EXPIRE', KEYS[1], ARGV[3])
+end
+return 1
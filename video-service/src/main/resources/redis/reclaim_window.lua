@@ -0,0 +1,15 @@
+-- Takes over a claimed window whose delivery was never acked (the claimer failed or died) once its
+-- lease has run out; only one caller can win it. Each takeover counts as another attempt.
+-- KEYS[1]: processing ZSET, KEYS[2]: claimed HASH, KEYS[3]: claimed actors ZSET
+-- ARGV[1]: claim id, ARGV[2]: now (ms), ARGV[3]: new lease deadline (ms)
+-- Returns {count, title, actors (most recent first), attempts} or nil when not (yet) reclaimable
+local lease = redis.call('ZSCORE', KEYS[1], ARGV[1])
+if not lease or tonumber(lease) > tonumber(ARGV[2]) then
+    return false
+end
+redis.call('ZADD', KEYS[1], ARGV[3], ARGV[1])
+local attempts = redis.call('HINCRBY', KEYS[2], 'attempts', 1)
+local count = redis.call('HGET', KEYS[2], 'count') or '0'
+local title = redis.call('HGET', KEYS[2], 'title') or ''
+local actors = redis.call('ZREVRANGE', KEYS[3], 0, -1)
+return {count, title, actors, tostring(attempts)}
@@ -0,0 +1,12 @@
+-- Removes feed entries found stale by a DB read, unless sync()/remove() touched them since the read
+-- began: that newer change already set the member to the right state.
+-- KEYS[1]: feed; KEYS[2]: changes; ARGV[1]: read start (epoch ms, minus skew margin); ARGV[2..]: members
+local since = tonumber(ARGV[1])
+local removed = 0
+for i = 2, #ARGV do
+    local changed = redis.call('ZSCORE', KEYS[2], ARGV[i])
+    if not changed or tonumber(changed) < since then
+        removed = removed + redis.call('ZREM', KEYS[1], ARGV[i])
+    end
+end
+return removed
@@ -0,0 +1,6 @@
+-- Extends a lock's lease only if it is still held by the caller's token.
+-- KEYS[1]: lock; ARGV[1]: token; ARGV[2]: lease in milliseconds
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,13 @@
+-- Puts drained deltas back when the DB write for them failed, undoing drain_view_buffers.lua.
+-- KEYS[1]: dirty set; ARGV: flat list {videoId, delta, ...}
+for i = 1, #ARGV, 2 do
+    local id = ARGV[i]
+    local delta = ARGV[i + 1]
+    redis.call('INCRBY', 'video:' .. id .. ':views:buffer', delta)
+    local mainKey = 'video:' .. id .. ':views'
+    if redis.call('EXISTS', mainKey) == 1 then
+        redis.call('DECRBY', mainKey, delta)
+    end
+    redis.call('SADD', KEYS[1], id)
+end
+return #ARGV / 2
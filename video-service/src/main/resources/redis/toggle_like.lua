@@ -0,0 +1,36 @@
+-- Flips a user's like on a video and queues the change for the DB in one atomic step.
+-- KEYS[1]: likers set, KEYS[2]: like counter, KEYS[3]: VIP set, KEYS[4]: write-behind queue,
+-- KEYS[5]: the user's liked-videos bitmap (bit 0 set once it has been loaded),
+-- KEYS[6]: the user's followed-videos ZSET (score = join time in ms)
+-- ARGV[1]: video id, ARGV[2]: user id, ARGV[3]: max followed videos kept per user,
+-- ARGV[4]: TTL in seconds of the likers set and counter, refreshed on every toggle
+-- Returns {liked (1/0), likeCount}, or {-1, 0} when the video's like state isn't loaded yet
+local current = redis.call('GET', KEYS[2])
+-- The two keys expire separately; a counter that no longer matches its set means the set is gone
+if not current or tonumber(current) ~= redis.call('SCARD', KEYS[1]) then
+    redis.call('DEL', KEYS[1], KEYS[2])
+    return {-1, 0}
+end
+local liked
+local count
+if redis.call('SREM', KEYS[1], ARGV[2]) == 1 then
+    liked = 0
+    count = redis.call('DECR', KEYS[2])
+else
+    redis.call('SADD', KEYS[1], ARGV[2])
+    redis.call('SADD', KEYS[3], ARGV[2])
+    local now = redis.call('TIME')
+    redis.call('ZADD', KEYS[6], 'NX', now[1] * 1000 + math.floor(now[2] / 1000), ARGV[1])
+    redis.call('ZREMRANGEBYRANK', KEYS[6], 0, -(tonumber(ARGV[3]) + 1))
+    liked = 1
+    count = redis.call('INCR', KEYS[2])
+end
+redis.call('EXPIRE', KEYS[1], ARGV[4])
+redis.call('EXPIRE', KEYS[2], ARGV[4])
+-- an unloaded bitmap is filled from the DB on first read, so leave it untouched until then
+if redis.call('GETBIT', KEYS[5], 0) == 1 then
+    redis.call('SETBIT', KEYS[5], ARGV[1], liked)
+end
+-- user id goes last since it may itself contain ':'
+redis.call('RPUSH', KEYS[4], ARGV[1] .. ':' .. liked .. ':' .. ARGV[2])
+return {liked, count}
@@ -0,0 +1,14 @@
+-- Merges the DB snapshot into a video's recent-comments ZSET and marks it complete. Comments pushed
+-- while the snapshot was being read are already in the set, and equal members merge, so the result
+-- neither loses nor duplicates them.
+-- KEYS[1]: zset; ARGV[1]: ttl seconds, ARGV[2]: capacity, ARGV[3]: completeness marker,
+-- ARGV[4..]: members (see push_recent_comment.lua)
+for i = 4, #ARGV do
+    redis.call('ZADD', KEYS[1], 0, ARGV[i])
+end
+redis.call('ZADD', KEYS[1], 0, ARGV[3])
+redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[2]) + 2))
+if redis.call('TTL', KEYS[1]) == -1 then
+    redis.call('EXPIRE', KEYS[1], ARGV[1])
+end
+return 1
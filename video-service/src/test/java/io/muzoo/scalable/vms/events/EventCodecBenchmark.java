@@ -0,0 +1,90 @@
+package io.muzoo.scalable.vms.events;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Cost of one like:count event on the wire, per format. Each benchmark is one encode or one decode:
+//   legacyMap* - the old path: a Map of strings through the shared ObjectMapper and a TypeReference
+//   json*      - EventCodec with vms.events.binary.enabled=false (cached writer/reader per type)
+//   smile*     - EventCodec with the flag on (version byte + Smile)
+// Compare the score and gc.alloc.rate.norm columns; the encoded sizes are printed once at setup.
+// Run main() from the IDE, or
+//   mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+//       -Dexec.args="-cp %classpath org.openjdk.jmh.Main EventCodecBenchmark -prof gc"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventCodecBenchmark {
+
+    private ObjectMapper objectMapper;
+    private EventCodec jsonCodec;
+    private EventCodec smileCodec;
+    private LikeCountEvent event;
+    private Map<String, String> legacyEvent;
+    private byte[] legacyBody;
+    private byte[] jsonBody;
+    private byte[] smileBody;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper();
+        jsonCodec = new EventCodec(false);
+        smileCodec = new EventCodec(true);
+        event = new LikeCountEvent(123_456L, 98_765L, true);
+        legacyEvent = Map.of("videoId", "123456", "likeCount", "98765", "isLiked", "true");
+        legacyBody = objectMapper.writeValueAsBytes(legacyEvent);
+        jsonBody = jsonCodec.encode(event);
+        smileBody = smileCodec.encode(event);
+        System.out.printf("%nlike:count bytes: legacy=%d json=%d smile=%d%n", legacyBody.length, jsonBody.length, smileBody.length);
+    }
+
+    @Benchmark
+    public byte[] legacyMapEncode() throws Exception {
+        return objectMapper.writeValueAsBytes(legacyEvent);
+    }
+
+    @Benchmark
+    public Map<String, String> legacyMapDecode() throws Exception {
+        return objectMapper.readValue(legacyBody, new TypeReference<HashMap<String, String>>() {
+        });
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return jsonCodec.encode(event);
+    }
+
+    @Benchmark
+    public LikeCountEvent jsonDecode() {
+        return jsonCodec.decode(jsonBody, LikeCountEvent.class);
+    }
+
+    @Benchmark
+    public byte[] smileEncode() {
+        return smileCodec.encode(event);
+    }
+
+    @Benchmark
+    public LikeCountEvent smileDecode() {
+        return smileCodec.decode(smileBody, LikeCountEvent.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EventCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
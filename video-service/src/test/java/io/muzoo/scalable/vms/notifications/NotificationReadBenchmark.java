@@ -0,0 +1,90 @@
+package io.muzoo.scalable.vms.notifications;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Allocation per notification page, before and after the typed read path. Each benchmark turns one
+// page of stored payloads into the response body the controller returns:
+//   legacyMaps - the old path: a Map per entry through a new TypeReference, then re-serialized
+//   typed      - NotificationInbox.parse (cached ObjectReader into Notification), then serialized
+//   raw        - NotificationInbox.renderRaw, stored JSON copied through untouched
+// Redis is left out so only the per-request work in this JVM is measured. Compare the
+// gc.alloc.rate.norm column (bytes per operation). Run main() from the IDE, or
+//   mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+//       -Dexec.args="-cp %classpath org.openjdk.jmh.Main NotificationReadBenchmark -prof gc"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotificationReadBenchmark {
+
+    @Param({"20", "50"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private NotificationInbox inbox;
+    private List<String> ids;
+    private List<String> payloads;
+    private List<Double> unread;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper();
+        inbox = new NotificationInbox(null, objectMapper, 50);
+        ids = new ArrayList<>(pageSize);
+        payloads = new ArrayList<>(pageSize);
+        unread = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            long id = 1000 - i;
+            Notification notification = new Notification(id, "user-42", 7L, "comment",
+                    "alice, bob and 3 others commented on video 'Benchmark video " + i + "'",
+                    5, List.of("alice", "bob", "carol"), 9L, "2026-10-17T12:00:00Z", false);
+            ids.add(String.valueOf(id));
+            payloads.add(objectMapper.writeValueAsString(notification));
+            unread.add(i % 3 == 0 ? (double) id : null);
+        }
+    }
+
+    @Benchmark
+    public String legacyMaps() throws Exception {
+        List<Map<String, Object>> notifications = new ArrayList<>(payloads.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            Map<String, Object> notification = objectMapper.readValue(payloads.get(i), new TypeReference<HashMap<String, Object>>() {
+            });
+            notification.put("read", unread.get(i) == null);
+            notifications.add(notification);
+        }
+        return objectMapper.writeValueAsString(notifications);
+    }
+
+    @Benchmark
+    public String typed() throws Exception {
+        List<Notification> notifications = inbox.parse(ids, payloads, unread);
+        return objectMapper.writeValueAsString(new NotificationInbox.NotificationPage(notifications, ids.get(ids.size() - 1)));
+    }
+
+    @Benchmark
+    public String raw() {
+        return NotificationInbox.renderRaw(ids, payloads, unread, ids.get(ids.size() - 1));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(NotificationReadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
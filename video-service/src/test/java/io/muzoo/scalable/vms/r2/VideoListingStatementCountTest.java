@@ -0,0 +1,152 @@
+package io.muzoo.scalable.vms.r2;
+
+import io.muzoo.scalable.vms.Video;
+import io.muzoo.scalable.vms.VideoRepository;
+import io.muzoo.scalable.vms.VideoStatus;
+import io.muzoo.scalable.vms.comments.RecentCommentsCache;
+import io.muzoo.scalable.vms.outbox.OutboxService;
+import io.muzoo.scalable.vms.redis.RedisPublisher;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Counts the SQL statements one /feed or /my page costs (listing query + counter resolution). The
+// count must stay constant as the page grows; a per-row lookup would make it grow with the page size.
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(VideoService.class)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:vms;MODE=MariaDB;DATABASE_TO_LOWER=TRUE",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "cloudflare.r2.bucket-name=test"
+})
+class VideoListingStatementCountTest {
+    private static final String OWNER = "owner-1";
+
+    @Autowired
+    private VideoService videoService;
+    @Autowired
+    private VideoRepository videoRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockitoBean
+    private S3Presigner s3Presigner;
+    @MockitoBean
+    private S3Client s3Client;
+    @MockitoBean
+    private RedisPublisher redisPublisher;
+    @MockitoBean
+    private RedisTemplate<String, Long> redisTemplateLong;
+    @MockitoBean
+    private PresignedUrlCache presignedUrlCache;
+    @MockitoBean
+    private HlsPlaylistCache hlsPlaylistCache;
+    @MockitoBean
+    private FeedIndexService feedIndexService;
+    @MockitoBean
+    private ViewCountAggregator viewCountAggregator;
+    @MockitoBean
+    private LikeEngine likeEngine;
+    @MockitoBean
+    private RecentCommentsCache recentCommentsCache;
+    @MockitoBean
+    private OutboxService outboxService;
+    @MockitoBean
+    private SegmentTokens segmentTokens;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 50; i++) {
+            Video video = new Video(OWNER, "video " + i, "description", "key-" + i, VideoStatus.UPLOADED, "Public");
+            video.setViewCount((long) i);
+            video.setLikeCount((long) i * 2);
+            videoRepository.save(video);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        // Redis holds no counters, so every value falls back to the row already loaded
+        when(feedIndexService.isReady()).thenReturn(false);
+        @SuppressWarnings("unchecked")
+        ValueOperations<String, Long> longValueOperations = mock(ValueOperations.class);
+        when(redisTemplateLong.opsForValue()).thenReturn(longValueOperations);
+        when(longValueOperations.multiGet(anyCollection()))
+                .thenAnswer(invocation -> Arrays.asList(new Long[invocation.<List<?>>getArgument(0).size()]));
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void feedPageCostsOneStatementRegardlessOfSize() {
+        assertEquals(1, statementsFor(() -> videoService.getCounters(videoService.getVideoFeed(1, 5))));
+        assertEquals(1, statementsFor(() -> videoService.getCounters(videoService.getVideoFeed(1, 40))));
+    }
+
+    @Test
+    void myVideosPageCostsOneStatementRegardlessOfSize() {
+        assertEquals(1, statementsFor(() -> videoService.getCounters(videoService.getMyVideos(1, 5, OWNER))));
+        assertEquals(1, statementsFor(() -> videoService.getCounters(videoService.getMyVideos(2, 40, OWNER))));
+    }
+
+    @Test
+    void countersByIdsCostOneStatement() {
+        List<Long> ids = new ArrayList<>();
+        videoRepository.findAll().forEach(video -> ids.add(video.getId()));
+        entityManager.clear();
+        statistics.clear();
+
+        Map<Long, VideoService.VideoCounters> counters = videoService.getCountersByIds(ids);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(ids.size(), counters.size());
+    }
+
+    @Test
+    void countersFallBackToRowValues() {
+        List<Video> page = videoService.getVideoFeed(1, 10);
+        Map<Long, VideoService.VideoCounters> counters = videoService.getCounters(page);
+        for (Video video : page) {
+            assertEquals(video.getViewCount(), counters.get(video.getId()).viewCount());
+            assertEquals(video.getLikeCount(), counters.get(video.getId()).likeCount());
+        }
+    }
+
+    private long statementsFor(Runnable page) {
+        entityManager.clear();
+        statistics.clear();
+        page.run();
+        return statistics.getPrepareStatementCount();
+    }
+}
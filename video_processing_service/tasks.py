@@ -10,6 +10,12 @@ app.config_from_object('celeryconfig')
 s3_client = S3Client()
 redis_client = redis.Redis(host='redis', port=6379, decode_responses=True)
 
+# video-service consumes processed videos from this stream through a consumer group;
+# VIDEO_PROCESSED_TRANSPORT=pubsub keeps the old fire-and-forget channel instead
+VIDEO_PROCESSED_STREAM = "stream:video:processed"
+VIDEO_PROCESSED_STREAM_MAXLEN = int(os.getenv("VIDEO_PROCESSED_STREAM_MAXLEN", "100000"))
+VIDEO_PROCESSED_TRANSPORT = os.getenv("VIDEO_PROCESSED_TRANSPORT", "stream")
+
 @app.task(queue='video_processing_queue')
 def process_video_task(video_id, s3_key, user_id):
     print(f"Enqueuing process_video_task for video_id: {video_id}")
@@ -59,7 +65,12 @@ def update_metadata(results, video_id, converted_key):
         "converted_url": converted_key,
         "duration": str(duration) if duration is not None else "0.0"
     }
-    redis_client.publish("video:processed", json.dumps(message_redis))
-    print(f"Published to video:processed: {message_redis}")
+    if VIDEO_PROCESSED_TRANSPORT == "pubsub":
+        redis_client.publish("video:processed", json.dumps(message_redis))
+        print(f"Published to video:processed: {message_redis}")
+    else:
+        entry_id = redis_client.xadd(VIDEO_PROCESSED_STREAM, message_redis,
+                                     maxlen=VIDEO_PROCESSED_STREAM_MAXLEN, approximate=True)
+        print(f"Appended to {VIDEO_PROCESSED_STREAM} as {entry_id}: {message_redis}")
 
     return {'status': 'success', 'video_id': video_id}
\ No newline at end of file
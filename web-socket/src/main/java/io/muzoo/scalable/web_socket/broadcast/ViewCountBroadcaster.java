@@ -0,0 +1,58 @@
+package io.muzoo.scalable.web_socket.broadcast;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Latest-value-wins buffer in front of /topic/views/{id}: each video is pushed to browsers at most
+// once per tick no matter how many view:count messages arrive in between. Mirrors the publishing side
+// in video-service (io.muzoo.scalable.vms.redis.ViewCountBroadcaster); keep the two in step.
+@Service
+public class ViewCountBroadcaster {
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ConcurrentHashMap<Long, Long> pending = new ConcurrentHashMap<>();
+    private final Counter mergedUpdates;
+    private final Counter droppedUpdates;
+    private final Counter sentUpdates;
+
+    public ViewCountBroadcaster(SimpMessagingTemplate messagingTemplate, MeterRegistry meterRegistry,
+                                @Value("${websocket.views.broadcast.interval-ms:250}") long intervalMs) {
+        if (intervalMs < 1) {
+            throw new IllegalArgumentException("websocket.views.broadcast.interval-ms must be at least 1, got " + intervalMs);
+        }
+        this.messagingTemplate = messagingTemplate;
+        this.mergedUpdates = meterRegistry.counter("websocket.views.broadcast.updates", "outcome", "merged");
+        this.droppedUpdates = meterRegistry.counter("websocket.views.broadcast.updates", "outcome", "dropped");
+        this.sentUpdates = meterRegistry.counter("websocket.views.broadcast.updates", "outcome", "sent");
+        meterRegistry.gaugeMapSize("websocket.views.broadcast.pending", List.of(), pending);
+    }
+
+    public void offer(Long videoId, long viewCount) {
+        pending.merge(videoId, viewCount, (current, incoming) -> {
+            if (incoming >= current) {
+                mergedUpdates.increment();
+                return incoming;
+            }
+            droppedUpdates.increment(); // stale value arriving after a newer one
+            return current;
+        });
+    }
+
+    @Scheduled(fixedRateString = "${websocket.views.broadcast.interval-ms:250}")
+    public void sendPending() {
+        for (Long videoId : pending.keySet()) {
+            Long viewCount = pending.remove(videoId);
+            if (viewCount == null) {
+                continue;
+            }
+            messagingTemplate.convertAndSend("/topic/views/" + videoId, viewCount);
+            sentUpdates.increment();
+        }
+    }
+}
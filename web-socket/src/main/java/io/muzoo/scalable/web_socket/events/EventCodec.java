@@ -0,0 +1,44 @@
+package io.muzoo.scalable.web_socket.events;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Decodes events published by video-service: one version byte followed by the record as Smile or
+// JSON (video-service picks with vms.events.binary.enabled). Unframed JSON (first byte '{') is still
+// accepted, since comment:new arrives from the outbox as plain JSON text. Readers are built once per
+// event type. Keep in step with io.muzoo.scalable.vms.events in video-service.
+@Component
+public class EventCodec {
+    public static final byte VERSION = 1;
+
+    private final ObjectMapper smileMapper = new SmileMapper();
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ConcurrentHashMap<Class<?>, ObjectReader> smileReaders = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, ObjectReader> jsonReaders = new ConcurrentHashMap<>();
+
+    public <T> T decode(byte[] body, Class<T> type) {
+        if (body == null || body.length == 0) {
+            throw new IllegalArgumentException("Empty " + type.getSimpleName() + " message");
+        }
+        try {
+            if (body[0] == '{') {
+                // Unframed JSON: comment:new from the outbox
+                return jsonReaders.computeIfAbsent(type, jsonMapper::readerFor).readValue(body);
+            }
+            if (body[0] != VERSION || body.length < 2) {
+                throw new IllegalArgumentException("Unsupported " + type.getSimpleName() + " version " + body[0]);
+            }
+            if (body[1] == '{') {
+                return jsonReaders.computeIfAbsent(type, jsonMapper::readerFor).readValue(body, 1, body.length - 1);
+            }
+            return smileReaders.computeIfAbsent(type, smileMapper::readerFor).readValue(body, 1, body.length - 1);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot decode " + type.getSimpleName() + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package io.muzoo.scalable.web_socket.events;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// like:count, published after every toggle
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record LikeCountEvent(long videoId, long likeCount, @JsonProperty("isLiked") boolean isLiked) {
+}
@@ -1,31 +1,30 @@
 package io.muzoo.scalable.web_socket.listener;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.muzoo.scalable.web_socket.events.CommentEvent;
+import io.muzoo.scalable.web_socket.events.EventCodec;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
-
 @Service
 @RequiredArgsConstructor
 public class CommentMessageListener implements MessageListener {
-    private final ObjectMapper objectMapper;
+    private static final Logger logger = LoggerFactory.getLogger(CommentMessageListener.class);
+    private final EventCodec eventCodec;
     private final SimpMessagingTemplate messagingTemplate;
 
     @Override
     public void onMessage(Message message, byte[] pattern) {
-        System.out.println("Received Redis message on channel: " + new String(pattern));
         try {
-            Map<String, Object> data = objectMapper.readValue(message.getBody(), new TypeReference<>() {});
-            Long videoId = Long.parseLong(data.get("video_id").toString());
-            messagingTemplate.convertAndSend("/topic/comments/" + videoId, data);
-            System.out.println("Sent comment to WebSocket: /topic/comments/" + videoId);
+            CommentEvent comment = eventCodec.decode(message.getBody(), CommentEvent.class);
+            messagingTemplate.convertAndSend("/topic/comments/" + comment.videoId(), comment);
+            logger.debug("Sent comment {} to /topic/comments/{}", comment.id(), comment.videoId());
         } catch (Exception e) {
-            System.out.println("Error processing comment:new message: " + e.getMessage());
+            logger.error("Error processing comment:new message: {}", e.getMessage(), e);
         }
     }
 }
@@ -1,39 +1,38 @@
 package io.muzoo.scalable.web_socket.listener;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
 
+// Notification payloads are built by the fan-out Lua scripts as finished JSON (read is already a
+// boolean), so the body is forwarded as is; the recipient comes from the channel name.
 @Service
 @RequiredArgsConstructor
 public class PerUserNotificationListener implements MessageListener {
+    private static final Logger logger = LoggerFactory.getLogger(PerUserNotificationListener.class);
+    private static final String CHANNEL_PREFIX = "notification:user:";
     private final SimpMessagingTemplate messagingTemplate;
-    private final ObjectMapper objectMapper;
 
     @Override
     public void onMessage(Message message, byte[] pattern) {
-        System.out.println("Received Redis message on channel: " + new String(pattern));
         try {
-            Map<String, Object> data = objectMapper.readValue(message.getBody(), new TypeReference<>() {});
-            String userId = (String) data.get("userId");
-
-            data.put("read", Boolean.parseBoolean(String.valueOf(data.get("read"))));
-
-            if (userId != null) {
-                messagingTemplate.convertAndSend("/user/" + userId + "/notifications", data);
-                System.out.println("Notified user " + userId + " via WebSocket: " + data);
-            } else {
-                System.out.println("Invalid notification data: missing userId");
+            String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+            if (!channel.startsWith(CHANNEL_PREFIX) || channel.length() == CHANNEL_PREFIX.length()) {
+                logger.warn("Invalid notification channel: {}", channel);
+                return;
             }
+            String userId = channel.substring(CHANNEL_PREFIX.length());
+            messagingTemplate.convertAndSend("/user/" + userId + "/notifications",
+                    new String(message.getBody(), StandardCharsets.UTF_8));
+            logger.debug("Notified user {} via WebSocket", userId);
         } catch (Exception e) {
-            System.out.println("Error in PerUserNotificationListener: " + e.getMessage());
+            logger.error("Error processing notification message: {}", e.getMessage(), e);
         }
     }
-
 }
@@ -1,62 +1,82 @@
 package io.muzoo.scalable.web_socket.redis;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.muzoo.scalable.web_socket.listener.CommentMessageListener;
 import io.muzoo.scalable.web_socket.listener.LikeCountMessageListener;
 import io.muzoo.scalable.web_socket.listener.PerUserNotificationListener;
 import io.muzoo.scalable.web_socket.listener.ViewCountMessageListener;
+import io.muzoo.scalable.web_socket.redis.BoundedMessageListener.OverflowPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.listener.PatternTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
 
+import java.time.Duration;
+
 @Configuration
 public class RedisConfig {
     private static final Logger logger = LoggerFactory.getLogger(RedisConfig.class);
 
+    // Starts without topics; RedisSubscriptionRegistry subscribes per-video / per-user channels on demand
     @Bean
-    public RedisMessageListenerContainer redisContainer(RedisConnectionFactory connectionFactory,
-                                                        MessageListenerAdapter viewCountListenerAdapter,
-                                                        MessageListenerAdapter likeCountListenerAdapter,
-                                                        MessageListenerAdapter commentListenerAdapter,
-                                                        MessageListenerAdapter perUserNotificationListenerAdapter) {
+    public RedisMessageListenerContainer redisContainer(RedisConnectionFactory connectionFactory, Environment environment,
+                                                        MeterRegistry meterRegistry) {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
-        container.addMessageListener(viewCountListenerAdapter, new PatternTopic("view:count"));
-        container.addMessageListener(likeCountListenerAdapter, new PatternTopic("like:count"));
-        container.addMessageListener(commentListenerAdapter, new PatternTopic("comment:new"));
-        container.addMessageListener(perUserNotificationListenerAdapter, new PatternTopic("notification:user:*"));
+        // Each listener queues onto its own bounded executor; this thread only hands messages over
+        container.setTaskExecutor(BoundedMessageListener.dispatchExecutor(
+                environment.getProperty("websocket.listeners.dispatch.queue-capacity", Integer.class, 10000),
+                meterRegistry.counter("websocket.redis.dispatch.dropped")));
         container.setErrorHandler(e -> logger.error("Error in Redis listener container: {}", e.getMessage(), e));
         return container;
     }
 
     @Bean
-    public ObjectMapper objectMapper() {
-        return new ObjectMapper();
+    public BoundedMessageListener viewCountListener(ViewCountMessageListener viewListener, Environment environment, MeterRegistry meterRegistry) {
+        return bounded("view-count", "view:count", new MessageListenerAdapter(viewListener, "onMessage"),
+                OverflowPolicy.COALESCE, environment, meterRegistry);
     }
 
     @Bean
-    public MessageListenerAdapter viewCountListenerAdapter(ViewCountMessageListener viewListener) {
-        return new MessageListenerAdapter(viewListener, "onMessage");
+    public BoundedMessageListener likeCountListener(LikeCountMessageListener likeListener, Environment environment, MeterRegistry meterRegistry) {
+        return bounded("like-count", "like:count", new MessageListenerAdapter(likeListener, "onMessage"),
+                OverflowPolicy.COALESCE, environment, meterRegistry);
     }
 
     @Bean
-    public MessageListenerAdapter likeCountListenerAdapter(LikeCountMessageListener likeListener) {
-        return new MessageListenerAdapter(likeListener, "onMessage");
+    public BoundedMessageListener commentListener(CommentMessageListener commentListener, Environment environment, MeterRegistry meterRegistry) {
+        return bounded("comment", "comment:new", new MessageListenerAdapter(commentListener, "onMessage"),
+                OverflowPolicy.BLOCK, environment, meterRegistry);
     }
 
     @Bean
-    public MessageListenerAdapter commentListenerAdapter(CommentMessageListener commentListener) {
-        return new MessageListenerAdapter(commentListener, "onMessage");
+    public BoundedMessageListener perUserNotificationListener(PerUserNotificationListener listener, Environment environment, MeterRegistry meterRegistry) {
+        return bounded("notification", "notification:user", new MessageListenerAdapter(listener, "onMessage"),
+                OverflowPolicy.BLOCK, environment, meterRegistry);
+    }
+
+    // Reads websocket.listeners.<name>.{concurrency,queue-capacity,overflow,block-timeout}
+    private static BoundedMessageListener bounded(String name, String channel, MessageListener listener,
+                                                  OverflowPolicy defaultOverflow, Environment environment,
+                                                  MeterRegistry meterRegistry) {
+        String prefix = "websocket.listeners." + name + ".";
+        BoundedMessageListener.Settings settings = new BoundedMessageListener.Settings(
+                environment.getProperty(prefix + "concurrency", Integer.class, 1),
+                environment.getProperty(prefix + "queue-capacity", Integer.class, 1000),
+                environment.getProperty(prefix + "overflow", OverflowPolicy.class, defaultOverflow),
+                environment.getProperty(prefix + "block-timeout", Duration.class, Duration.ofSeconds(5)));
+        return new BoundedMessageListener(channel, listener, settings, meterRegistry);
     }
 
     @Bean
-    public MessageListenerAdapter perUserNotificationListenerAdapter(PerUserNotificationListener listener) {
-        return new MessageListenerAdapter(listener, "onMessage");
+    public ObjectMapper objectMapper() {
+        return new ObjectMapper();
     }
 
 }
@@ -0,0 +1,182 @@
+package io.muzoo.scalable.web_socket.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Subscribes this node to the per-video / per-user Redis channels its STOMP clients are interested
+// in, instead of every node receiving every event. Each Redis channel is reference counted by the
+// STOMP subscriptions mapped to it: the first one subscribes the container, the last unsubscribe or
+// disconnect removes it. Messages that still arrive for a channel without local subscribers (the
+// gap between the last unsubscribe and Redis acknowledging it) are counted as wasted and dropped.
+@Component
+public class RedisSubscriptionRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(RedisSubscriptionRegistry.class);
+
+    private static final Pattern VIDEO_DESTINATION = Pattern.compile("^/topic/(views|likes|comments)/(\\d+)$");
+    private static final Pattern USER_DESTINATION = Pattern.compile("^/user/([A-Za-z0-9_-]+)/notifications$");
+
+    private final RedisMessageListenerContainer container;
+    private final Map<String, MessageListener> listenersByKind;
+    private final Counter deliveredMessages;
+    private final Counter wastedMessages;
+
+    // Changes are made under this; subscriptions is also read lock-free on the Redis delivery path
+    private final Map<String, Map<String, String>> channelsBySession = new HashMap<>();
+    private final ConcurrentHashMap<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    private record Subscription(MessageListener listener, ChannelTopic topic, int references) {
+        Subscription withReferences(int references) {
+            return new Subscription(listener, topic, references);
+        }
+    }
+
+    public RedisSubscriptionRegistry(RedisMessageListenerContainer container,
+                                     @Qualifier("viewCountListener") MessageListener viewCountListener,
+                                     @Qualifier("likeCountListener") MessageListener likeCountListener,
+                                     @Qualifier("commentListener") MessageListener commentListener,
+                                     @Qualifier("perUserNotificationListener") MessageListener perUserNotificationListener,
+                                     MeterRegistry meterRegistry) {
+        this.container = container;
+        this.listenersByKind = Map.of(
+                "views", viewCountListener,
+                "likes", likeCountListener,
+                "comments", commentListener,
+                "notifications", perUserNotificationListener);
+        this.deliveredMessages = meterRegistry.counter("websocket.redis.deliveries", "outcome", "delivered");
+        this.wastedMessages = meterRegistry.counter("websocket.redis.deliveries", "outcome", "wasted");
+        meterRegistry.gauge("websocket.redis.subscriptions", subscriptions, Map::size);
+    }
+
+    // STOMP destination -> Redis channel carrying its events; null for destinations not backed by Redis
+    static String channelFor(String destination) {
+        if (destination == null) {
+            return null;
+        }
+        Matcher video = VIDEO_DESTINATION.matcher(destination);
+        if (video.matches()) {
+            return switch (video.group(1)) {
+                case "views" -> "view:count:" + video.group(2);
+                case "likes" -> "like:count:" + video.group(2);
+                default -> "comment:new:" + video.group(2);
+            };
+        }
+        Matcher user = USER_DESTINATION.matcher(destination);
+        return user.matches() ? "notification:user:" + user.group(1) : null;
+    }
+
+    private static String kindOf(String channel) {
+        if (channel.startsWith("view:count:")) {
+            return "views";
+        }
+        if (channel.startsWith("like:count:")) {
+            return "likes";
+        }
+        if (channel.startsWith("comment:new:")) {
+            return "comments";
+        }
+        return "notifications";
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor headers = StompHeaderAccessor.wrap(event.getMessage());
+        String channel = channelFor(headers.getDestination());
+        if (channel == null || headers.getSessionId() == null || headers.getSubscriptionId() == null) {
+            return;
+        }
+        synchronized (this) {
+            String previous = channelsBySession.computeIfAbsent(headers.getSessionId(), id -> new HashMap<>())
+                    .put(headers.getSubscriptionId(), channel);
+            if (previous != null) {
+                release(previous);
+            }
+            acquire(channel);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor headers = StompHeaderAccessor.wrap(event.getMessage());
+        synchronized (this) {
+            Map<String, String> sessionChannels = channelsBySession.get(headers.getSessionId());
+            if (sessionChannels == null) {
+                return;
+            }
+            String channel = sessionChannels.remove(headers.getSubscriptionId());
+            if (channel != null) {
+                release(channel);
+            }
+            if (sessionChannels.isEmpty()) {
+                channelsBySession.remove(headers.getSessionId());
+            }
+        }
+    }
+
+    // May be published more than once per session; the second call finds nothing left to release
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        synchronized (this) {
+            Map<String, String> sessionChannels = channelsBySession.remove(event.getSessionId());
+            if (sessionChannels != null) {
+                sessionChannels.values().forEach(this::release);
+            }
+        }
+    }
+
+    public boolean hasLocalSubscribers(String channel) {
+        return subscriptions.containsKey(channel);
+    }
+
+    private void acquire(String channel) {
+        Subscription current = subscriptions.get(channel);
+        if (current != null) {
+            subscriptions.put(channel, current.withReferences(current.references() + 1));
+            return;
+        }
+        MessageListener delegate = listenersByKind.get(kindOf(channel));
+        MessageListener listener = (message, pattern) -> {
+            if (!hasLocalSubscribers(channel)) {
+                wastedMessages.increment();
+                return;
+            }
+            deliveredMessages.increment();
+            delegate.onMessage(message, pattern);
+        };
+        ChannelTopic topic = new ChannelTopic(channel);
+        subscriptions.put(channel, new Subscription(listener, topic, 1));
+        container.addMessageListener(listener, topic);
+        logger.debug("Subscribed to {}", channel);
+    }
+
+    private void release(String channel) {
+        Subscription current = subscriptions.get(channel);
+        if (current == null) {
+            return;
+        }
+        if (current.references() > 1) {
+            subscriptions.put(channel, current.withReferences(current.references() - 1));
+            return;
+        }
+        subscriptions.remove(channel);
+        container.removeMessageListener(current.listener(), current.topic());
+        logger.debug("Unsubscribed from {}", channel);
+    }
+}